@@ -39,10 +39,30 @@ android {
     }
     buildFeatures {
         compose = true
+        buildConfig = true
     }
     composeOptions {
         kotlinCompilerExtensionVersion = "1.5.8"
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            all {
+                // T9TrieMemoryTest builds a million-contact index
+                it.maxHeapSize = "1g"
+                // Benchmarks are slow and machine-dependent: left out of the default run, and
+                // run on their own with -Pbenchmarks. Figures go to build/reports/benchmarks.
+                it.useJUnit {
+                    if (project.hasProperty("benchmarks")) {
+                        includeCategories("com.rohit.secondarycontacts.data.Benchmark")
+                    } else {
+                        excludeCategories("com.rohit.secondarycontacts.data.Benchmark")
+                    }
+                }
+                it.systemProperty("benchmarks.dir", layout.buildDirectory.dir("reports/benchmarks").get().asFile.path)
+            }
+        }
+    }
     packaging {
         resources {
             excludes += "/META-INF/{AL2.0,LGPL2.1}"
@@ -71,8 +91,16 @@ dependencies {
     // Room
     implementation("androidx.room:room-runtime:2.6.1")
     implementation("androidx.room:room-ktx:2.6.1")
+    implementation("androidx.room:room-paging:2.6.1")
     ksp("androidx.room:room-compiler:2.6.1")
 
+    // Paging
+    implementation("androidx.paging:paging-runtime-ktx:3.2.1")
+    implementation("androidx.paging:paging-compose:3.2.1")
+
+    // Immutable collections
+    implementation("org.jetbrains.kotlinx:kotlinx-collections-immutable:0.3.7")
+
     // ViewModel
     implementation("androidx.lifecycle:lifecycle-viewmodel-compose:2.7.0")
     implementation("androidx.lifecycle:lifecycle-runtime-compose:2.7.0")
@@ -80,6 +108,11 @@ dependencies {
     // Coil for image loading
     implementation("io.coil-kt:coil-compose:2.5.0")
 
+    // Tests
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("org.robolectric:robolectric:4.11.1")
+    testImplementation("androidx.test:core-ktx:1.5.0")
+
     debugImplementation("androidx.compose.ui:ui-tooling")
     debugImplementation("androidx.compose.ui:ui-test-manifest")
 }
@@ -1,10 +1,86 @@
 package com.rohit.secondarycontacts
 
 import android.app.Application
+import com.rohit.secondarycontacts.data.CallerIdLookup
+import com.rohit.secondarycontacts.data.ContactBackup
+import com.rohit.secondarycontacts.data.ContactChangeFeed
 import com.rohit.secondarycontacts.data.ContactDatabase
+import com.rohit.secondarycontacts.data.ContactExporter
+import com.rohit.secondarycontacts.data.ContactImporter
+import com.rohit.secondarycontacts.data.ContactPhotos
+import com.rohit.secondarycontacts.data.ContactSnapshotStore
+import com.rohit.secondarycontacts.data.ContactWriteQueue
+import com.rohit.secondarycontacts.data.DuplicateDetector
+import com.rohit.secondarycontacts.data.FuzzySearch
+import com.rohit.secondarycontacts.data.QueryMetrics
+import com.rohit.secondarycontacts.data.SortKeyRefresher
+import com.rohit.secondarycontacts.data.T9Index
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import java.io.File
 
 class SecondaryContactsApp : Application() {
+    val applicationScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    // Per-statement timing formats every query's SQL and arguments, so release builds skip it
+    val queryMetrics: QueryMetrics? = if (BuildConfig.DEBUG) QueryMetrics() else null
+
     val database: ContactDatabase by lazy {
-        ContactDatabase.getDatabase(this)
+        ContactDatabase.getDatabase(this, queryMetrics)
+    }
+
+    val callerIdLookup: CallerIdLookup by lazy {
+        CallerIdLookup(database, changeFeed, applicationScope)
+    }
+
+    val changeFeed: ContactChangeFeed by lazy {
+        ContactChangeFeed(database, applicationScope)
+    }
+
+    val writeQueue: ContactWriteQueue by lazy {
+        ContactWriteQueue(database, applicationScope)
+    }
+
+    val photos: ContactPhotos by lazy {
+        ContactPhotos(database, File(filesDir, "photos"), applicationScope)
+    }
+
+    val importer: ContactImporter by lazy {
+        ContactImporter(database, photos.dir)
+    }
+
+    val exporter: ContactExporter by lazy {
+        ContactExporter(database)
+    }
+
+    val backup: ContactBackup by lazy {
+        ContactBackup(database)
+    }
+
+    val t9Index: T9Index by lazy {
+        T9Index(database, changeFeed, applicationScope)
+    }
+
+    val fuzzySearch: FuzzySearch by lazy {
+        FuzzySearch(database, changeFeed, applicationScope)
+    }
+
+    val snapshotStore: ContactSnapshotStore by lazy {
+        ContactSnapshotStore(this, applicationScope)
+    }
+
+    val duplicateDetector: DuplicateDetector by lazy {
+        DuplicateDetector(database)
+    }
+
+    val sortKeyRefresher: SortKeyRefresher by lazy {
+        SortKeyRefresher(this, database, applicationScope)
+    }
+
+    override fun onCreate() {
+        super.onCreate()
+        sortKeyRefresher.start()
+        photos.start()
     }
 }
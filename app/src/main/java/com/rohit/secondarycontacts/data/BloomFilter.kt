@@ -0,0 +1,46 @@
+package com.rohit.secondarycontacts.data
+
+import kotlin.math.ln
+import kotlin.math.roundToInt
+
+class BloomFilter(expectedInsertions: Int, falsePositiveRate: Double = 0.01) {
+    private val bitCount: Int
+    private val hashCount: Int
+    private val bits: LongArray
+
+    init {
+        val n = expectedInsertions.coerceAtLeast(1)
+        val m = (-n * ln(falsePositiveRate) / (ln(2.0) * ln(2.0))).toLong().coerceIn(64, Int.MAX_VALUE.toLong())
+        bitCount = m.toInt()
+        hashCount = (m.toDouble() / n * ln(2.0)).roundToInt().coerceIn(1, 16)
+        bits = LongArray((bitCount + 63) / 64)
+    }
+
+    fun put(key: String) {
+        val h1 = key.hashCode()
+        val h2 = secondHash(key)
+        for (i in 0 until hashCount) {
+            val bit = ((h1 + i * h2) and Int.MAX_VALUE) % bitCount
+            bits[bit ushr 6] = bits[bit ushr 6] or (1L shl bit)
+        }
+    }
+
+    fun mightContain(key: String): Boolean {
+        val h1 = key.hashCode()
+        val h2 = secondHash(key)
+        for (i in 0 until hashCount) {
+            val bit = ((h1 + i * h2) and Int.MAX_VALUE) % bitCount
+            if (bits[bit ushr 6] and (1L shl bit) == 0L) return false
+        }
+        return true
+    }
+
+    // FNV-1a, forced odd so the double-hashing probe sequence doesn't collapse
+    private fun secondHash(key: String): Int {
+        var hash = -0x7ee3623b
+        for (c in key) {
+            hash = (hash xor c.code) * 0x01000193
+        }
+        return hash or 1
+    }
+}
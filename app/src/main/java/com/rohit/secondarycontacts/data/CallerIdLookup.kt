@@ -0,0 +1,113 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.onSubscription
+import kotlinx.coroutines.launch
+
+data class ContactDigits(
+    val id: Int,
+    val reversedDigits: String
+)
+
+// Resolves incoming numbers by their trailing digits. A Bloom filter over the last
+// MATCH_DIGITS digits answers the common "not in book" case without touching SQLite. It is
+// built in the background and patched from the change feed: inserts and number edits add
+// their key, deletes leave stale bits behind (they only cost a false positive), and the
+// filter is rebuilt once the keys added since the last build exceed its headroom.
+class CallerIdLookup(
+    database: ContactDatabase,
+    private val changeFeed: ContactChangeFeed,
+    scope: CoroutineScope
+) {
+    private val dao = database.contactDao()
+
+    @Volatile
+    private var filter: BloomFilter? = null
+
+    // Touched only by the maintenance coroutine
+    private var capacity = 0
+    private var keysAdded = 0
+
+    init {
+        scope.launch {
+            val pending = Channel<List<ContactChange>>(Channel.UNLIMITED)
+            val subscribed = CompletableDeferred<Unit>()
+            launch {
+                changeFeed.batches
+                    .onSubscription { subscribed.complete(Unit) }
+                    .collect { pending.send(it) }
+            }
+            subscribed.await()
+            rebuild()
+            for (batch in pending) apply(batch)
+        }
+    }
+
+    suspend fun lookupByIncomingNumber(number: String): Contact? {
+        val incoming = PhoneDigits.reversed(number)
+        if (incoming.isEmpty()) return null
+        val key = incoming.take(MATCH_DIGITS)
+        // Until the first build finishes, the indexed range query answers on its own
+        val current = filter
+        if (current != null && !current.mightContain(key)) return null
+
+        return dao.findByReversedDigitsPrefix(key, CANDIDATE_LIMIT)
+            .map { it to commonPrefixLength(it.reversedDigits, incoming) }
+            .filter { (contact, matched) ->
+                matched >= minOf(contact.reversedDigits.length, incoming.length, MAX_MATCH_DIGITS)
+            }
+            .maxByOrNull { it.second }
+            ?.first
+    }
+
+    private suspend fun rebuild() {
+        val count = dao.countContacts()
+        val size = maxOf(count * 2, MIN_CAPACITY)
+        val built = BloomFilter(size)
+        var afterId = 0
+        while (true) {
+            val page = dao.loadReversedDigitsAfter(afterId, PAGE_SIZE)
+            if (page.isEmpty()) break
+            page.forEach { if (it.reversedDigits.isNotEmpty()) built.put(it.reversedDigits.take(MATCH_DIGITS)) }
+            afterId = page.last().id
+        }
+        filter = built
+        capacity = size
+        keysAdded = count
+    }
+
+    // Updates that leave the number alone (calls, favorites, renames) find their key already
+    // present and change nothing
+    private suspend fun apply(batch: List<ContactChange>) {
+        val current = filter ?: return
+        val ids = batch.filter { it.type != ContactChange.Type.DELETE }.map { it.contactId }.distinct()
+        ids.chunked(PAGE_SIZE).forEach { chunk ->
+            dao.getReversedDigitsByIds(chunk).forEach { row ->
+                if (row.reversedDigits.isEmpty()) return@forEach
+                val key = row.reversedDigits.take(MATCH_DIGITS)
+                if (!current.mightContain(key)) {
+                    current.put(key)
+                    keysAdded++
+                }
+            }
+        }
+        if (keysAdded > capacity) rebuild()
+    }
+
+    private fun commonPrefixLength(a: String, b: String): Int {
+        val max = minOf(a.length, b.length)
+        var i = 0
+        while (i < max && a[i] == b[i]) i++
+        return i
+    }
+
+    companion object {
+        private const val MATCH_DIGITS = 7
+        private const val MAX_MATCH_DIGITS = 10
+        private const val CANDIDATE_LIMIT = 16
+        private const val MIN_CAPACITY = 1024
+        private const val PAGE_SIZE = 1000
+    }
+}
@@ -0,0 +1,53 @@
+package com.rohit.secondarycontacts.data
+
+import android.icu.text.AlphabeticIndex
+import android.icu.text.Collator
+import android.icu.util.ULocale
+import java.util.Locale
+
+object Collation {
+    private val HEX = "0123456789abcdef".toCharArray()
+
+    @Volatile
+    private var cached: Pair<Locale, Collator>? = null
+
+    // Frozen collators are safe to share across the importer, write queue and refresher threads
+    private fun collator(): Collator {
+        val locale = Locale.getDefault()
+        cached?.let { (cachedLocale, collator) -> if (cachedLocale == locale) return collator }
+        val collator = Collator.getInstance(ULocale.forLocale(locale)).freeze()
+        cached = locale to collator
+        return collator
+    }
+
+    @Volatile
+    private var cachedIndex: Pair<Locale, AlphabeticIndex.ImmutableIndex<Any>>? = null
+
+    // Buckets follow the same collation as sortKey, so each section is a contiguous run of the list
+    private fun alphabeticIndex(): AlphabeticIndex.ImmutableIndex<Any> {
+        val locale = Locale.getDefault()
+        cachedIndex?.let { (cachedLocale, index) -> if (cachedLocale == locale) return index }
+        val index = AlphabeticIndex<Any>(ULocale.forLocale(locale)).buildImmutableIndex()
+        cachedIndex = locale to index
+        return index
+    }
+
+    fun section(name: String): Int = alphabeticIndex().getBucketIndex(name)
+
+    fun sectionLabel(section: Int): String = alphabeticIndex().getBucket(section)?.label ?: "#"
+
+    fun localeTag(): String = Locale.getDefault().toLanguageTag()
+
+    // Lowercase hex keeps the byte order of the ICU key, so SQLite's binary TEXT comparison
+    // (and an ordinary index) yields locale-correct ordering
+    fun sortKey(name: String): String {
+        val bytes = collator().getCollationKey(name).toByteArray()
+        val out = CharArray(bytes.size * 2)
+        for (i in bytes.indices) {
+            val b = bytes[i].toInt() and 0xFF
+            out[i * 2] = HEX[b ushr 4]
+            out[i * 2 + 1] = HEX[b and 0x0F]
+        }
+        return String(out)
+    }
+}
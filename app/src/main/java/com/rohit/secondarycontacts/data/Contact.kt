@@ -1,10 +1,23 @@
 package com.rohit.secondarycontacts.data
 
+import androidx.compose.runtime.Immutable
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 
-@Entity(tableName = "contacts")
+@Entity(
+    tableName = "contacts",
+    indices = [
+        Index(value = ["sortKey"]),
+        Index(value = ["isFavorite", "sortKey"]),
+        Index(value = ["lastCalledAt"]),
+        Index(value = ["t9Key"]),
+        Index(value = ["reversedDigits"]),
+        Index(value = ["group", "sortKey"])
+    ]
+)
+@Immutable
 data class Contact(
     @PrimaryKey(autoGenerate = true) val id: Int = 0,
     val name: String,
@@ -12,5 +25,25 @@ data class Contact(
     @ColumnInfo(defaultValue = "0") val isFavorite: Boolean = false,
     @ColumnInfo(name = "group", defaultValue = "") val group: String = "",
     @ColumnInfo(defaultValue = "NULL") val photoUri: String? = null,
-    @ColumnInfo(defaultValue = "NULL") val lastCalledAt: Long? = null
+    @ColumnInfo(defaultValue = "NULL") val lastCalledAt: Long? = null,
+    @ColumnInfo(defaultValue = "0") val callCount: Int = 0,
+    @ColumnInfo(defaultValue = "") val t9Key: String = "",
+    @ColumnInfo(defaultValue = "") val normalizedDigits: String = "",
+    @ColumnInfo(defaultValue = "") val reversedDigits: String = "",
+    @ColumnInfo(defaultValue = "") val sortKey: String = "",
+    @ColumnInfo(defaultValue = "0") val section: Int = 0,
+    @ColumnInfo(defaultValue = "") val displayNumber: String = ""
 )
+
+// Columns derived from name/phoneNumber (sortKey/section/displayNumber for the current locale); recomputed on every write through ContactDao
+fun Contact.withDerivedColumns(): Contact {
+    val digits = PhoneDigits.normalize(phoneNumber)
+    return copy(
+        t9Key = T9.encode(name),
+        normalizedDigits = digits,
+        reversedDigits = digits.reversed(),
+        sortKey = Collation.sortKey(name),
+        section = Collation.section(name),
+        displayNumber = PhoneFormatter.format(phoneNumber)
+    )
+}
@@ -0,0 +1,347 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.zip.CRC32
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+// Lossless binary backup, unlike CSV/vCard it keeps ids, photoUri and call history.
+//
+//   file   = "SCBK" version:varint flags:byte block* end
+//   block  = rawLength:varint storedLength:varint crc32(raw):int32 stored[storedLength]
+//   end    = rawLength 0
+//   raw    = (recordLength:varint record)*
+//   record = id:varint name:str phone:str group:str photoUri:str flags:byte
+//            [lastCalledAt:varlong] callCount:varint
+//   str    = byteLength:varint utf8
+//
+// With FLAG_DEFLATE each block's records are deflated independently, so a corrupt block is
+// detected by its checksum and skipped without losing the rest of the file.
+class ContactBackup(database: ContactDatabase) {
+    private val dao = database.contactDao()
+
+    fun backupTo(outputStream: OutputStream, compress: Boolean = true): Flow<ExportProgress> = flow {
+        var progress = ExportProgress()
+        outputStream.buffered().use { out ->
+            progress = progress.copy(totalRows = dao.countContacts())
+            emit(progress)
+            out.write(MAGIC)
+            writeVarint(out, VERSION.toLong())
+            out.write(if (compress) FLAG_DEFLATE else 0)
+
+            val writer = BlockWriter(out, compress)
+            var afterId = 0
+            while (true) {
+                val page = dao.loadContactsAfter(afterId, PAGE_SIZE)
+                if (page.isEmpty()) break
+                page.forEach { writer.add(it) }
+                afterId = page.last().id
+                val written = progress.rowsWritten + page.size
+                progress = progress.copy(rowsWritten = written, totalRows = maxOf(progress.totalRows, written))
+                emit(progress)
+            }
+            writer.finish()
+        }
+        emit(progress.copy(done = true))
+    }.flowOn(Dispatchers.IO)
+
+    // Restores BATCH_SIZE contacts per transaction, merging into the book (see
+    // ContactDao.restoreContacts). With `replaceAll` the book is cleared first, but only once the
+    // first batch has decoded (or a complete empty backup was read), so a file that is not a
+    // backup or is corrupt from the start leaves it untouched. A block that fails its checksum
+    // counts as one error and is skipped; a truncated file ends the restore with whatever was
+    // read before it.
+    fun restoreFrom(inputStream: InputStream, totalBytes: Long? = null, replaceAll: Boolean = false): Flow<ImportProgress> = flow {
+        var progress = ImportProgress(totalBytes = totalBytes)
+        var errors = 0
+        var cleared = !replaceAll
+        inputStream.buffered().use { input ->
+            val reader = BlockReader(input)
+            val batch = ArrayList<Contact>(BATCH_SIZE)
+            suspend fun flush() {
+                if (batch.isEmpty()) return
+                if (!cleared) {
+                    dao.deleteAll()
+                    cleared = true
+                }
+                dao.restoreContacts(batch)
+                progress = progress.copy(
+                    bytesRead = reader.bytesRead,
+                    rowsWritten = progress.rowsWritten + batch.size,
+                    errors = errors
+                )
+                batch.clear()
+                emit(progress)
+            }
+
+            var complete = false
+            try {
+                reader.readHeader()
+                while (true) {
+                    val records = try {
+                        reader.nextBlock() ?: break
+                    } catch (e: CorruptBlockException) {
+                        errors++
+                        continue
+                    }
+                    for (contact in records) {
+                        batch += contact
+                        progress = progress.copy(rowsParsed = progress.rowsParsed + 1)
+                        if (batch.size == BATCH_SIZE) flush()
+                    }
+                }
+                complete = errors == 0
+            } catch (e: IOException) {
+                errors++
+            } finally {
+                reader.close()
+            }
+            flush()
+            if (!cleared && complete) dao.deleteAll()
+            emit(progress.copy(bytesRead = reader.bytesRead, errors = errors, done = true))
+        }
+    }.flowOn(Dispatchers.IO)
+
+    private class CorruptBlockException : IOException()
+
+    private class BlockWriter(private val out: OutputStream, private val compress: Boolean) {
+        private val raw = ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4)
+        private val record = ByteArrayOutputStream(256)
+        private val compressed = ByteArray(BLOCK_SIZE)
+        private val deflater = Deflater()
+        private val crc = CRC32()
+
+        fun add(contact: Contact) {
+            record.reset()
+            writeVarint(record, contact.id.toLong())
+            writeString(record, contact.name)
+            writeString(record, contact.phoneNumber)
+            writeString(record, contact.group)
+            writeString(record, contact.photoUri.orEmpty())
+            val lastCalledAt = contact.lastCalledAt
+            record.write((if (contact.isFavorite) RECORD_FAVORITE else 0) or (if (lastCalledAt != null) RECORD_CALLED else 0))
+            if (lastCalledAt != null) writeVarint(record, lastCalledAt)
+            writeVarint(record, contact.callCount.toLong())
+
+            writeVarint(raw, record.size().toLong())
+            record.writeTo(raw)
+            if (raw.size() >= BLOCK_SIZE) flushBlock()
+        }
+
+        fun finish() {
+            flushBlock()
+            writeVarint(out, 0)
+            deflater.end()
+        }
+
+        private fun flushBlock() {
+            if (raw.size() == 0) return
+            val bytes = raw.toByteArray()
+            crc.reset()
+            crc.update(bytes)
+            writeVarint(out, bytes.size.toLong())
+            if (compress) {
+                deflater.reset()
+                deflater.setInput(bytes)
+                deflater.finish()
+                val stored = ByteArrayOutputStream(bytes.size / 2)
+                while (!deflater.finished()) {
+                    val n = deflater.deflate(compressed)
+                    stored.write(compressed, 0, n)
+                }
+                writeVarint(out, stored.size().toLong())
+                writeInt(out, crc.value.toInt())
+                stored.writeTo(out)
+            } else {
+                writeVarint(out, bytes.size.toLong())
+                writeInt(out, crc.value.toInt())
+                out.write(bytes)
+            }
+            raw.reset()
+        }
+    }
+
+    private class BlockReader(private val input: InputStream) {
+        private val inflater = Inflater()
+        private val crc = CRC32()
+        private var compressed = false
+        var bytesRead = 0L
+            private set
+
+        fun close() = inflater.end()
+
+        fun readHeader() {
+            val magic = readFully(MAGIC.size)
+            if (!magic.contentEquals(MAGIC)) throw IOException("Not a contacts backup")
+            val version = readVarint()
+            if (version != VERSION.toLong()) throw IOException("Unsupported backup version $version")
+            compressed = (readByte() and FLAG_DEFLATE) != 0
+        }
+
+        // Records of the next block, or null after the end marker
+        fun nextBlock(): List<Contact>? {
+            val rawLength = readVarint().toInt()
+            if (rawLength == 0) return null
+            val storedLength = readVarint().toInt()
+            if (rawLength !in 1..MAX_BLOCK_SIZE || storedLength !in 1..MAX_BLOCK_SIZE) throw IOException("Bad block length")
+            val expectedCrc = readInt()
+            val stored = readFully(storedLength)
+
+            val raw = if (compressed) {
+                val out = ByteArray(rawLength)
+                try {
+                    inflater.reset()
+                    inflater.setInput(stored)
+                    if (inflater.inflate(out) != rawLength) throw CorruptBlockException()
+                } catch (e: DataFormatException) {
+                    throw CorruptBlockException()
+                }
+                out
+            } else {
+                if (storedLength != rawLength) throw CorruptBlockException()
+                stored
+            }
+            crc.reset()
+            crc.update(raw)
+            if (crc.value.toInt() != expectedCrc) throw CorruptBlockException()
+            return decodeRecords(raw)
+        }
+
+        private fun decodeRecords(raw: ByteArray): List<Contact> {
+            val cursor = ByteCursor(raw)
+            val contacts = ArrayList<Contact>()
+            while (cursor.position < raw.size) {
+                val length = cursor.readVarint().toInt()
+                val end = cursor.position + length
+                if (length <= 0 || end > raw.size) throw CorruptBlockException()
+                val id = cursor.readVarint().toInt()
+                val name = cursor.readString()
+                val phone = cursor.readString()
+                val group = cursor.readString()
+                val photoUri = cursor.readString().ifEmpty { null }
+                val flags = cursor.readByte()
+                val lastCalledAt = if (flags and RECORD_CALLED != 0) cursor.readVarint() else null
+                val callCount = cursor.readVarint().toInt()
+                // Fields appended by later versions are skipped
+                cursor.position = end
+                contacts += Contact(
+                    id = id,
+                    name = name,
+                    phoneNumber = phone,
+                    group = group,
+                    photoUri = photoUri,
+                    isFavorite = flags and RECORD_FAVORITE != 0,
+                    lastCalledAt = lastCalledAt,
+                    callCount = callCount
+                )
+            }
+            return contacts
+        }
+
+        private fun readByte(): Int {
+            val b = input.read()
+            if (b < 0) throw EOFException()
+            bytesRead++
+            return b
+        }
+
+        private fun readVarint(): Long {
+            var result = 0L
+            var shift = 0
+            while (true) {
+                val b = readByte()
+                result = result or ((b and 0x7F).toLong() shl shift)
+                if (b and 0x80 == 0) return result
+                shift += 7
+                if (shift > 63) throw IOException("Malformed varint")
+            }
+        }
+
+        private fun readInt(): Int =
+            (readByte() shl 24) or (readByte() shl 16) or (readByte() shl 8) or readByte()
+
+        private fun readFully(length: Int): ByteArray {
+            val bytes = ByteArray(length)
+            var offset = 0
+            while (offset < length) {
+                val n = input.read(bytes, offset, length - offset)
+                if (n < 0) throw EOFException()
+                offset += n
+            }
+            bytesRead += length
+            return bytes
+        }
+    }
+
+    private class ByteCursor(private val bytes: ByteArray) {
+        var position = 0
+
+        fun readByte(): Int {
+            if (position >= bytes.size) throw CorruptBlockException()
+            return bytes[position++].toInt() and 0xFF
+        }
+
+        fun readVarint(): Long {
+            var result = 0L
+            var shift = 0
+            while (true) {
+                val b = readByte()
+                result = result or ((b and 0x7F).toLong() shl shift)
+                if (b and 0x80 == 0) return result
+                shift += 7
+                if (shift > 63) throw CorruptBlockException()
+            }
+        }
+
+        fun readString(): String {
+            val length = readVarint().toInt()
+            if (length < 0 || position + length > bytes.size) throw CorruptBlockException()
+            val value = String(bytes, position, length, Charsets.UTF_8)
+            position += length
+            return value
+        }
+    }
+
+    companion object {
+        private val MAGIC = byteArrayOf('S'.code.toByte(), 'C'.code.toByte(), 'B'.code.toByte(), 'K'.code.toByte())
+        private const val VERSION = 1
+        private const val FLAG_DEFLATE = 1
+        private const val RECORD_FAVORITE = 1
+        private const val RECORD_CALLED = 2
+        private const val BLOCK_SIZE = 64 * 1024
+        private const val MAX_BLOCK_SIZE = 16 * 1024 * 1024
+        private const val PAGE_SIZE = 1000
+        private const val BATCH_SIZE = 500
+
+        private fun writeVarint(out: OutputStream, value: Long) {
+            var v = value
+            while (v and 0x7FL.inv() != 0L) {
+                out.write(((v and 0x7F) or 0x80).toInt())
+                v = v ushr 7
+            }
+            out.write(v.toInt())
+        }
+
+        private fun writeInt(out: OutputStream, value: Int) {
+            out.write(value ushr 24)
+            out.write(value ushr 16)
+            out.write(value ushr 8)
+            out.write(value)
+        }
+
+        private fun writeString(out: OutputStream, value: String) {
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            writeVarint(out, bytes.size.toLong())
+            out.write(bytes)
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Row-level change log, written by triggers on `contacts` (see ContactDatabase.CHANGE_TRIGGERS)
+@Entity(tableName = "contact_changes")
+data class ContactChange(
+    @PrimaryKey(autoGenerate = true) val seq: Long = 0,
+    val contactId: Int,
+    val type: Type
+) {
+    enum class Type { INSERT, UPDATE, DELETE }
+}
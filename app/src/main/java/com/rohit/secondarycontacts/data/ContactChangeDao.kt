@@ -0,0 +1,20 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.Dao
+import androidx.room.Query
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface ContactChangeDao {
+    @Query("SELECT MAX(seq) FROM contact_changes")
+    fun observeLatestSeq(): Flow<Long?>
+
+    @Query("SELECT MAX(seq) FROM contact_changes")
+    suspend fun getLatestSeq(): Long?
+
+    @Query("SELECT * FROM contact_changes WHERE seq > :afterSeq ORDER BY seq ASC")
+    suspend fun getChangesAfter(afterSeq: Long): List<ContactChange>
+
+    @Query("DELETE FROM contact_changes WHERE seq <= :upToSeq")
+    suspend fun prune(upToSeq: Long)
+}
@@ -0,0 +1,35 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flatMapConcat
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.shareIn
+
+// Tails contact_changes and republishes each committed write once. Only the cheap
+// MAX(seq) query is re-run on invalidation; consumed entries are pruned right away.
+class ContactChangeFeed(database: ContactDatabase, scope: CoroutineScope) {
+    private val dao = database.contactChangeDao()
+
+    val batches: SharedFlow<List<ContactChange>> = flow {
+        var lastSeq = dao.getLatestSeq() ?: 0L
+        dao.prune(lastSeq)
+        dao.observeLatestSeq().collect { latest ->
+            if (latest != null && latest > lastSeq) {
+                val changes = dao.getChangesAfter(lastSeq)
+                if (changes.isNotEmpty()) {
+                    lastSeq = changes.last().seq
+                    emit(changes)
+                    dao.prune(lastSeq)
+                }
+            }
+        }
+    }.shareIn(scope, SharingStarted.Eagerly)
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val changes: Flow<ContactChange> = batches.flatMapConcat { it.asFlow() }
+}
@@ -1,54 +1,303 @@
 package com.rohit.secondarycontacts.data
 
+import androidx.paging.PagingSource
 import androidx.room.Dao
 import androidx.room.Delete
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
 import kotlinx.coroutines.flow.Flow
 
 @Dao
 interface ContactDao {
-    @Query("SELECT * FROM contacts ORDER BY name ASC")
+    @Query("SELECT * FROM contacts ORDER BY sortKey ASC")
     fun getAllContacts(): Flow<List<Contact>>
 
+    @Query("SELECT * FROM contacts ORDER BY sortKey ASC")
+    fun getAllContactsPaged(): PagingSource<Int, Contact>
+
     @Query("SELECT * FROM contacts WHERE id = :id")
     suspend fun getContactById(id: Int): Contact?
 
-    @Query("SELECT * FROM contacts WHERE name LIKE '%' || :query || '%' OR phoneNumber LIKE '%' || :query || '%' ORDER BY name ASC")
-    fun searchContacts(query: String): Flow<List<Contact>>
+    fun searchContacts(query: String): Flow<List<Contact>> {
+        val match = ContactSearch.toFtsMatch(query) ?: return searchContactsLike(query)
+        return searchContactsFts(match, query.trim())
+    }
+
+    // Name-prefix hits rank above hits on a later name token or on the phone number
+    @Query(
+        "SELECT contacts.* FROM contacts JOIN contacts_fts ON contacts.id = contacts_fts.rowid " +
+            "WHERE contacts_fts MATCH :match " +
+            "ORDER BY (contacts.name LIKE :prefix || '%') DESC, contacts.sortKey ASC"
+    )
+    fun searchContactsFts(match: String, prefix: String): Flow<List<Contact>>
+
+    @Query("SELECT * FROM contacts WHERE name LIKE '%' || :query || '%' OR phoneNumber LIKE '%' || :query || '%' ORDER BY sortKey ASC")
+    fun searchContactsLike(query: String): Flow<List<Contact>>
+
+    fun searchContactsPaged(query: String): PagingSource<Int, Contact> {
+        val match = ContactSearch.toFtsMatch(query) ?: return searchContactsLikePaged(query)
+        return searchContactsFtsPaged(match, query.trim())
+    }
+
+    @Query(
+        "SELECT contacts.* FROM contacts JOIN contacts_fts ON contacts.id = contacts_fts.rowid " +
+            "WHERE contacts_fts MATCH :match " +
+            "ORDER BY (contacts.name LIKE :prefix || '%') DESC, contacts.sortKey ASC"
+    )
+    fun searchContactsFtsPaged(match: String, prefix: String): PagingSource<Int, Contact>
+
+    @Query("SELECT * FROM contacts WHERE name LIKE '%' || :query || '%' OR phoneNumber LIKE '%' || :query || '%' ORDER BY sortKey ASC")
+    fun searchContactsLikePaged(query: String): PagingSource<Int, Contact>
+
+    fun searchContactsInGroup(query: String, group: String): Flow<List<Contact>> {
+        val match = ContactSearch.toFtsMatch(query) ?: return searchContactsInGroupLike(query, group)
+        return searchContactsInGroupFts(match, query.trim(), group)
+    }
 
-    @Query("SELECT * FROM contacts WHERE phoneNumber LIKE '%' || :digits || '%' ORDER BY name ASC")
+    @Query(
+        "SELECT contacts.* FROM contacts JOIN contacts_fts ON contacts.id = contacts_fts.rowid " +
+            "WHERE contacts_fts MATCH :match AND contacts.`group` = :group " +
+            "ORDER BY (contacts.name LIKE :prefix || '%') DESC, contacts.sortKey ASC"
+    )
+    fun searchContactsInGroupFts(match: String, prefix: String, group: String): Flow<List<Contact>>
+
+    @Query("SELECT * FROM contacts WHERE `group` = :group AND (name LIKE '%' || :query || '%' OR phoneNumber LIKE '%' || :query || '%') ORDER BY sortKey ASC")
+    fun searchContactsInGroupLike(query: String, group: String): Flow<List<Contact>>
+
+    fun searchContactsInGroupPaged(query: String, group: String): PagingSource<Int, Contact> {
+        val match = ContactSearch.toFtsMatch(query) ?: return searchContactsInGroupLikePaged(query, group)
+        return searchContactsInGroupFtsPaged(match, query.trim(), group)
+    }
+
+    @Query(
+        "SELECT contacts.* FROM contacts JOIN contacts_fts ON contacts.id = contacts_fts.rowid " +
+            "WHERE contacts_fts MATCH :match AND contacts.`group` = :group " +
+            "ORDER BY (contacts.name LIKE :prefix || '%') DESC, contacts.sortKey ASC"
+    )
+    fun searchContactsInGroupFtsPaged(match: String, prefix: String, group: String): PagingSource<Int, Contact>
+
+    @Query("SELECT * FROM contacts WHERE `group` = :group AND (name LIKE '%' || :query || '%' OR phoneNumber LIKE '%' || :query || '%') ORDER BY sortKey ASC")
+    fun searchContactsInGroupLikePaged(query: String, group: String): PagingSource<Int, Contact>
+
+    @Query("SELECT * FROM contacts WHERE phoneNumber LIKE '%' || :digits || '%' ORDER BY sortKey ASC")
     fun searchByPhone(digits: String): Flow<List<Contact>>
 
-    @Query("SELECT * FROM contacts WHERE isFavorite = 1 ORDER BY name ASC")
+    @Query("SELECT * FROM contacts WHERE isFavorite = 1 ORDER BY sortKey ASC")
     fun getFavoriteContacts(): Flow<List<Contact>>
 
+    @Query("SELECT * FROM contacts WHERE isFavorite = 1 ORDER BY sortKey ASC LIMIT :limit")
+    suspend fun loadFavorites(limit: Int): List<Contact>
+
+    @Query("SELECT * FROM contacts ORDER BY sortKey ASC LIMIT :limit")
+    suspend fun loadFirstPage(limit: Int): List<Contact>
+
+    @Query("SELECT * FROM contacts WHERE isFavorite = 1 ORDER BY sortKey ASC")
+    fun getFavoriteContactsPaged(): PagingSource<Int, Contact>
+
     @Query("UPDATE contacts SET isFavorite = :isFavorite WHERE id = :id")
     suspend fun toggleFavorite(id: Int, isFavorite: Boolean)
 
-    @Query("SELECT * FROM contacts WHERE `group` = :group ORDER BY name ASC")
+    @Query("UPDATE contacts SET isFavorite = NOT isFavorite WHERE id = :id")
+    suspend fun flipFavorite(id: Int)
+
+    @Query("SELECT * FROM contacts WHERE `group` = :group ORDER BY sortKey ASC")
     fun getContactsByGroup(group: String): Flow<List<Contact>>
 
+    @Query("SELECT * FROM contacts WHERE `group` = :group ORDER BY sortKey ASC")
+    fun getContactsByGroupPaged(group: String): PagingSource<Int, Contact>
+
+    // T9 digits of the name are a prefix of t9Key; ':' sorts right after '9', closing the index range.
+    // Unordered candidates for the caller to rank.
+    @Query("SELECT * FROM contacts WHERE t9Key >= :digits AND t9Key < :digits || ':' LIMIT :limit")
+    suspend fun loadDialerSuggestions(digits: String, limit: Int): List<Contact>
+
+    @Query("SELECT contactId FROM contact_phone_keys WHERE digits >= :digits AND digits < :digits || ':' LIMIT :limit")
+    suspend fun findByPhoneKeyPrefix(digits: String, limit: Int): List<Int>
+
+    // Numbers with a digit run starting with `digits`, plus numbers ending in them; both are
+    // index ranges. Unordered candidates for the caller to rank.
+    suspend fun loadPhoneSuggestions(digits: String, limit: Int): List<Contact> {
+        val ids = findByPhoneKeyPrefix(digits, limit).distinct()
+        val byRun = if (ids.isEmpty()) emptyList() else getContactsByIds(ids)
+        val bySuffix = findByReversedDigitsPrefix(digits.reversed(), limit)
+        return (byRun + bySuffix).distinctBy { it.id }
+    }
+
+    @Query("SELECT id, name, lastCalledAt, callCount FROM contacts WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun loadContactSummariesAfter(afterId: Int, limit: Int): List<ContactSummary>
+
+    @Query("SELECT COUNT(*) FROM contacts")
+    suspend fun countContacts(): Int
+
+    @Query("SELECT * FROM contacts WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun loadContactsAfter(afterId: Int, limit: Int): List<Contact>
+
+    @Query("SELECT id, name, normalizedDigits FROM contacts WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun loadDuplicateKeysAfter(afterId: Int, limit: Int): List<DuplicateKey>
+
+    @Query("UPDATE contacts SET sortKey = :sortKey, section = :section, displayNumber = :displayNumber WHERE id = :id")
+    suspend fun updateLocaleColumns(id: Int, sortKey: String, section: Int, displayNumber: String)
+
+    @Query("SELECT section, SUM(count) AS count FROM contact_sections GROUP BY section ORDER BY section ASC")
+    fun observeSectionCounts(): Flow<List<SectionCount>>
+
+    @Query("SELECT section, count FROM contact_sections WHERE `group` = :group ORDER BY section ASC")
+    fun observeSectionCountsInGroup(group: String): Flow<List<SectionCount>>
+
+    @Query("SELECT id, name, lastCalledAt, callCount FROM contacts WHERE id IN (:ids)")
+    suspend fun getContactSummariesByIds(ids: List<Int>): List<ContactSummary>
+
+    @Query("SELECT id, name, `group` FROM contacts WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun loadContactNamesAfter(afterId: Int, limit: Int): List<ContactName>
+
+    @Query("SELECT id, name, `group` FROM contacts WHERE id IN (:ids)")
+    suspend fun getContactNamesByIds(ids: List<Int>): List<ContactName>
+
+    @Query("SELECT * FROM contacts WHERE reversedDigits >= :reversedPrefix AND reversedDigits < :reversedPrefix || ':' LIMIT :limit")
+    suspend fun findByReversedDigitsPrefix(reversedPrefix: String, limit: Int): List<Contact>
+
+    @Query("SELECT id, reversedDigits FROM contacts WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun loadReversedDigitsAfter(afterId: Int, limit: Int): List<ContactDigits>
+
+    @Query("SELECT id, reversedDigits FROM contacts WHERE id IN (:ids)")
+    suspend fun getReversedDigitsByIds(ids: List<Int>): List<ContactDigits>
+
+    @Query(
+        "SELECT contactId, COUNT(*) AS shared FROM contact_trigrams WHERE trigram IN (:trigrams) " +
+            "GROUP BY contactId HAVING COUNT(*) >= :minShared ORDER BY shared DESC LIMIT :limit"
+    )
+    suspend fun findTrigramCandidates(trigrams: List<String>, minShared: Int, limit: Int): List<TrigramHit>
+
+    @Query(
+        "SELECT t.contactId, COUNT(*) AS shared FROM contact_trigrams t JOIN contacts c ON c.id = t.contactId " +
+            "WHERE t.trigram IN (:trigrams) AND c.`group` = :group " +
+            "GROUP BY t.contactId HAVING COUNT(*) >= :minShared ORDER BY shared DESC LIMIT :limit"
+    )
+    suspend fun findTrigramCandidatesInGroup(trigrams: List<String>, group: String, minShared: Int, limit: Int): List<TrigramHit>
+
+    // Trigram and phone-key rows are removed by delete triggers; inserts and updates rewrite them here
+    @Transaction
+    suspend fun insert(contact: Contact) {
+        val id = insertEntity(contact.withDerivedColumns()).toInt()
+        replaceTrigrams(id, contact.name)
+        replacePhoneKeys(id, contact.phoneNumber)
+    }
+
+    @Transaction
+    suspend fun insertAll(contacts: List<Contact>) {
+        val ids = insertAllEntities(contacts.map { it.withDerivedColumns() })
+        contacts.forEachIndexed { i, contact ->
+            replaceTrigrams(ids[i].toInt(), contact.name)
+            replacePhoneKeys(ids[i].toInt(), contact.phoneNumber)
+        }
+    }
+
+    @Transaction
+    suspend fun update(contact: Contact) {
+        updateEntity(contact.withDerivedColumns())
+        replaceTrigrams(contact.id, contact.name)
+        replacePhoneKeys(contact.id, contact.phoneNumber)
+    }
+
+    suspend fun replaceTrigrams(contactId: Int, name: String) {
+        deleteTrigrams(contactId)
+        insertTrigrams(Trigrams.rows(contactId, name))
+    }
+
+    @Query("DELETE FROM contact_trigrams WHERE contactId = :contactId")
+    suspend fun deleteTrigrams(contactId: Int)
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertTrigrams(trigrams: List<ContactTrigram>)
+
+    suspend fun replacePhoneKeys(contactId: Int, phoneNumber: String) {
+        deletePhoneKeys(contactId)
+        insertPhoneKeys(PhoneDigits.keyRows(contactId, phoneNumber))
+    }
+
+    @Query("DELETE FROM contact_phone_keys WHERE contactId = :contactId")
+    suspend fun deletePhoneKeys(contactId: Int)
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertPhoneKeys(keys: List<ContactPhoneKey>)
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insert(contact: Contact)
+    suspend fun insertEntity(contact: Contact): Long
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertAll(contacts: List<Contact>)
+    suspend fun insertAllEntities(contacts: List<Contact>): List<Long>
 
     @Update
-    suspend fun update(contact: Contact)
+    suspend fun updateEntity(contact: Contact)
 
     @Delete
     suspend fun delete(contact: Contact)
 
+    // Folds `others` into `keepId`: call stats add up, favorites and missing fields carry over,
+    // and the most complete form of the number is kept. Returns null without changing anything
+    // when the rows hold different numbers, since one contact cannot keep them all.
+    @Transaction
+    suspend fun mergeContacts(keepId: Int, others: List<Int>): Contact? {
+        val rows = getContactsByIds(others + keepId)
+        val keep = rows.firstOrNull { it.id == keepId } ?: return null
+        if (!DuplicateDetector.sameNumber(rows.map { it.phoneNumber })) return null
+        val merged = rows.filter { it.id != keepId }.fold(keep) { acc, other ->
+            val longer = PhoneDigits.normalize(other.phoneNumber).length > PhoneDigits.normalize(acc.phoneNumber).length
+            acc.copy(
+                phoneNumber = if (longer) other.phoneNumber else acc.phoneNumber,
+                isFavorite = acc.isFavorite || other.isFavorite,
+                group = acc.group.ifEmpty { other.group },
+                photoUri = acc.photoUri ?: other.photoUri,
+                lastCalledAt = listOfNotNull(acc.lastCalledAt, other.lastCalledAt).maxOrNull(),
+                callCount = acc.callCount + other.callCount
+            )
+        }
+        update(merged)
+        deleteByIds(others.filter { it != keepId })
+        return merged
+    }
+
+    @Query("DELETE FROM contacts WHERE id IN (:ids)")
+    suspend fun deleteByIds(ids: List<Int>)
+
+    @Query("SELECT photoUri FROM contacts WHERE photoUri LIKE :prefix || '%'")
+    suspend fun loadPhotoUrisUnder(prefix: String): List<String>
+
+    // Merging restore. A backup row takes over an existing id only when that row is the same
+    // contact (same name and number), as when restoring onto the device the backup came from;
+    // any other collision, such as a different device or a reinstall, gets a fresh id so an
+    // unrelated contact is never overwritten. Replaced rows are deleted first so the delete
+    // triggers keep section counts and the change log right.
+    @Transaction
+    suspend fun restoreContacts(contacts: List<Contact>) {
+        val existing = getContactsByIds(contacts.map { it.id }).associateBy { it.id }
+        val replacedIds = contacts.filter { contact ->
+            val row = existing[contact.id] ?: return@filter false
+            row.name == contact.name && PhoneDigits.normalize(row.phoneNumber) == PhoneDigits.normalize(contact.phoneNumber)
+        }.mapTo(HashSet()) { it.id }
+        deleteByIds(replacedIds.toList())
+        insertAll(contacts.map { if (it.id in existing && it.id !in replacedIds) it.copy(id = 0) else it })
+    }
+
+    // For a "replace all" restore, once the backup has been read successfully
+    @Query("DELETE FROM contacts")
+    suspend fun deleteAll()
+
     @Query("DELETE FROM contacts WHERE id = :id")
     suspend fun deleteById(id: Int)
 
     @Query("SELECT * FROM contacts WHERE lastCalledAt IS NOT NULL ORDER BY lastCalledAt DESC LIMIT :limit")
     fun getRecentlyContacted(limit: Int = 10): Flow<List<Contact>>
 
-    @Query("UPDATE contacts SET lastCalledAt = :timestamp WHERE id = :id")
-    suspend fun markCalled(id: Int, timestamp: Long)
+    @Query("SELECT * FROM contacts WHERE lastCalledAt IS NOT NULL ORDER BY lastCalledAt DESC LIMIT :limit")
+    suspend fun loadRecentlyContacted(limit: Int = 10): List<Contact>
+
+    @Query("SELECT * FROM contacts WHERE id IN (:ids)")
+    suspend fun getContactsByIds(ids: List<Int>): List<Contact>
+
+    @Query("UPDATE contacts SET lastCalledAt = :timestamp, callCount = callCount + :calls WHERE id = :id")
+    suspend fun markCalled(id: Int, timestamp: Long, calls: Int = 1)
 }
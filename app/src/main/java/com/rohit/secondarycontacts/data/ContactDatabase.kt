@@ -6,10 +6,12 @@ import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
 
-@Database(entities = [Contact::class], version = 3, exportSchema = false)
+@Database(entities = [Contact::class, ContactFts::class, ContactChange::class, ContactTrigram::class, ContactSection::class, ContactPhoneKey::class], version = 17, exportSchema = false)
 abstract class ContactDatabase : RoomDatabase() {
     abstract fun contactDao(): ContactDao
+    abstract fun contactChangeDao(): ContactChangeDao
 
     companion object {
         @Volatile
@@ -29,14 +31,263 @@ abstract class ContactDatabase : RoomDatabase() {
             }
         }
 
-        fun getDatabase(context: Context): ContactDatabase {
+        val MIGRATION_3_4 = object : Migration(3, 4) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Same DDL Room generates for ContactFts, including its content sync triggers
+                db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `contacts_fts` USING FTS4(`name` TEXT NOT NULL, `phoneNumber` TEXT NOT NULL, content=`contacts`)")
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_contacts_fts_BEFORE_UPDATE BEFORE UPDATE ON `contacts` BEGIN DELETE FROM `contacts_fts` WHERE `docid`=OLD.`rowid`; END")
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_contacts_fts_BEFORE_DELETE BEFORE DELETE ON `contacts` BEGIN DELETE FROM `contacts_fts` WHERE `docid`=OLD.`rowid`; END")
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_contacts_fts_AFTER_UPDATE AFTER UPDATE ON `contacts` BEGIN INSERT INTO `contacts_fts`(`docid`, `name`, `phoneNumber`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`phoneNumber`); END")
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_contacts_fts_AFTER_INSERT AFTER INSERT ON `contacts` BEGIN INSERT INTO `contacts_fts`(`docid`, `name`, `phoneNumber`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`phoneNumber`); END")
+                db.execSQL("INSERT INTO `contacts_fts`(`contacts_fts`) VALUES ('rebuild')")
+            }
+        }
+
+        val MIGRATION_4_5 = object : Migration(4, 5) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN t9Key TEXT NOT NULL DEFAULT ''")
+                db.query("SELECT id, name FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET t9Key = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        update.bindString(1, T9.encode(cursor.getString(1)))
+                        update.bindLong(2, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_t9Key` ON `contacts` (`t9Key`)")
+            }
+        }
+
+        val MIGRATION_5_6 = object : Migration(5, 6) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN normalizedDigits TEXT NOT NULL DEFAULT ''")
+                db.execSQL("ALTER TABLE contacts ADD COLUMN reversedDigits TEXT NOT NULL DEFAULT ''")
+                db.query("SELECT id, phoneNumber FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET normalizedDigits = ?, reversedDigits = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        val digits = PhoneDigits.normalize(cursor.getString(1))
+                        update.bindString(1, digits)
+                        update.bindString(2, digits.reversed())
+                        update.bindLong(3, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_reversedDigits` ON `contacts` (`reversedDigits`)")
+            }
+        }
+
+        val MIGRATION_6_7 = object : Migration(6, 7) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_group_name` ON `contacts` (`group`, `name`)")
+            }
+        }
+
+        // Favorites and recents would ideally be partial indices (WHERE isFavorite = 1 /
+        // lastCalledAt IS NOT NULL), but Room's schema validation rejects indices it cannot
+        // declare, so they are composite/plain indices that serve the same ORDER BY.
+        val MIGRATION_7_8 = object : Migration(7, 8) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_name` ON `contacts` (`name`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_isFavorite_name` ON `contacts` (`isFavorite`, `name`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_lastCalledAt` ON `contacts` (`lastCalledAt`)")
+            }
+        }
+
+        val MIGRATION_8_9 = object : Migration(8, 9) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `contact_changes` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `contactId` INTEGER NOT NULL, `type` TEXT NOT NULL)")
+                CHANGE_TRIGGERS.forEach { db.execSQL(it) }
+            }
+        }
+
+        val MIGRATION_9_10 = object : Migration(9, 10) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN callCount INTEGER NOT NULL DEFAULT 0")
+                db.execSQL("UPDATE contacts SET callCount = 1 WHERE lastCalledAt IS NOT NULL")
+            }
+        }
+
+        val MIGRATION_10_11 = object : Migration(10, 11) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `contact_trigrams` (`trigram` TEXT NOT NULL, `contactId` INTEGER NOT NULL, PRIMARY KEY(`trigram`, `contactId`))")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contact_trigrams_contactId` ON `contact_trigrams` (`contactId`)")
+                db.execSQL(TRIGRAM_DELETE_TRIGGER)
+                db.query("SELECT id, name FROM contacts").use { cursor ->
+                    val insert = db.compileStatement("INSERT OR IGNORE INTO contact_trigrams (trigram, contactId) VALUES (?, ?)")
+                    while (cursor.moveToNext()) {
+                        val id = cursor.getLong(0)
+                        Trigrams.of(cursor.getString(1)).forEach { trigram ->
+                            insert.bindString(1, trigram)
+                            insert.bindLong(2, id)
+                            insert.executeInsert()
+                            insert.clearBindings()
+                        }
+                    }
+                }
+            }
+        }
+
+        // Keys are built for the locale at migration time; SortKeyRefresher takes over from there
+        val MIGRATION_11_12 = object : Migration(11, 12) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN sortKey TEXT NOT NULL DEFAULT ''")
+                db.query("SELECT id, name FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET sortKey = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        update.bindString(1, Collation.sortKey(cursor.getString(1)))
+                        update.bindLong(2, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+                db.execSQL("DROP INDEX IF EXISTS `index_contacts_name`")
+                db.execSQL("DROP INDEX IF EXISTS `index_contacts_isFavorite_name`")
+                db.execSQL("DROP INDEX IF EXISTS `index_contacts_group_name`")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_sortKey` ON `contacts` (`sortKey`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_isFavorite_sortKey` ON `contacts` (`isFavorite`, `sortKey`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contacts_group_sortKey` ON `contacts` (`group`, `sortKey`)")
+            }
+        }
+
+        val MIGRATION_12_13 = object : Migration(12, 13) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN section INTEGER NOT NULL DEFAULT 0")
+                db.query("SELECT id, name FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET section = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        update.bindLong(1, Collation.section(cursor.getString(1)).toLong())
+                        update.bindLong(2, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+                db.execSQL("CREATE TABLE IF NOT EXISTS `contact_sections` (`group` TEXT NOT NULL, `section` INTEGER NOT NULL, `count` INTEGER NOT NULL, PRIMARY KEY(`group`, `section`))")
+                db.execSQL("INSERT INTO contact_sections (`group`, section, count) SELECT `group`, section, COUNT(*) FROM contacts GROUP BY `group`, section")
+                SECTION_TRIGGERS.forEach { db.execSQL(it) }
+            }
+        }
+
+        val MIGRATION_13_14 = object : Migration(13, 14) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE contacts ADD COLUMN displayNumber TEXT NOT NULL DEFAULT ''")
+                db.query("SELECT id, phoneNumber FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET displayNumber = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        update.bindString(1, PhoneFormatter.format(cursor.getString(1)))
+                        update.bindLong(2, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+            }
+        }
+
+        // The content table keeps its sync triggers; only the index is rebuilt with the new tokenizer
+        val MIGRATION_14_15 = object : Migration(14, 15) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("DROP TABLE IF EXISTS `contacts_fts`")
+                db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `contacts_fts` USING FTS4(`name` TEXT NOT NULL, `phoneNumber` TEXT NOT NULL, tokenize=unicode61, content=`contacts`)")
+                db.execSQL("INSERT INTO `contacts_fts`(`contacts_fts`) VALUES ('rebuild')")
+            }
+        }
+
+        // Accented Latin letters gained T9 digits; only rows whose key changes are rewritten
+        val MIGRATION_15_16 = object : Migration(15, 16) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.query("SELECT id, name, t9Key FROM contacts").use { cursor ->
+                    val update = db.compileStatement("UPDATE contacts SET t9Key = ? WHERE id = ?")
+                    while (cursor.moveToNext()) {
+                        val key = T9.encode(cursor.getString(1))
+                        if (key == cursor.getString(2)) continue
+                        update.bindString(1, key)
+                        update.bindLong(2, cursor.getLong(0))
+                        update.executeUpdateDelete()
+                        update.clearBindings()
+                    }
+                }
+            }
+        }
+
+        val MIGRATION_16_17 = object : Migration(16, 17) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `contact_phone_keys` (`digits` TEXT NOT NULL, `contactId` INTEGER NOT NULL, PRIMARY KEY(`digits`, `contactId`))")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_contact_phone_keys_contactId` ON `contact_phone_keys` (`contactId`)")
+                db.execSQL(PHONE_KEY_DELETE_TRIGGER)
+                db.query("SELECT id, phoneNumber FROM contacts").use { cursor ->
+                    val insert = db.compileStatement("INSERT OR IGNORE INTO contact_phone_keys (digits, contactId) VALUES (?, ?)")
+                    while (cursor.moveToNext()) {
+                        val id = cursor.getLong(0)
+                        PhoneDigits.runKeys(cursor.getString(1)).forEach { key ->
+                            insert.bindString(1, key)
+                            insert.bindLong(2, id)
+                            insert.executeInsert()
+                            insert.clearBindings()
+                        }
+                    }
+                }
+            }
+        }
+
+        // Not expressible as Room entities, so created on both fresh installs and migration
+        private val CHANGE_TRIGGERS = listOf(
+            "CREATE TRIGGER IF NOT EXISTS contacts_log_insert AFTER INSERT ON contacts BEGIN INSERT INTO contact_changes(contactId, type) VALUES (NEW.id, 'INSERT'); END",
+            "CREATE TRIGGER IF NOT EXISTS contacts_log_update AFTER UPDATE ON contacts BEGIN INSERT INTO contact_changes(contactId, type) VALUES (NEW.id, 'UPDATE'); END",
+            "CREATE TRIGGER IF NOT EXISTS contacts_log_delete AFTER DELETE ON contacts BEGIN INSERT INTO contact_changes(contactId, type) VALUES (OLD.id, 'DELETE'); END"
+        )
+
+        private const val TRIGRAM_DELETE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS contacts_trigrams_delete AFTER DELETE ON contacts BEGIN DELETE FROM contact_trigrams WHERE contactId = OLD.id; END"
+
+        private const val PHONE_KEY_DELETE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS contacts_phone_keys_delete AFTER DELETE ON contacts BEGIN DELETE FROM contact_phone_keys WHERE contactId = OLD.id; END"
+
+        // REPLACE inserts over an existing id skip the delete trigger (recursive_triggers is off);
+        // contacts are only ever inserted with unused ids (a restore deletes a row it replaces first),
+        // so the counts stay exact
+        private val SECTION_TRIGGERS = listOf(
+            "CREATE TRIGGER IF NOT EXISTS contacts_sections_insert AFTER INSERT ON contacts BEGIN " +
+                "INSERT OR IGNORE INTO contact_sections (`group`, section, count) VALUES (NEW.`group`, NEW.section, 0); " +
+                "UPDATE contact_sections SET count = count + 1 WHERE `group` = NEW.`group` AND section = NEW.section; END",
+            "CREATE TRIGGER IF NOT EXISTS contacts_sections_update AFTER UPDATE OF `group`, section ON contacts " +
+                "WHEN OLD.`group` != NEW.`group` OR OLD.section != NEW.section BEGIN " +
+                "UPDATE contact_sections SET count = count - 1 WHERE `group` = OLD.`group` AND section = OLD.section; " +
+                "INSERT OR IGNORE INTO contact_sections (`group`, section, count) VALUES (NEW.`group`, NEW.section, 0); " +
+                "UPDATE contact_sections SET count = count + 1 WHERE `group` = NEW.`group` AND section = NEW.section; END",
+            "CREATE TRIGGER IF NOT EXISTS contacts_sections_delete AFTER DELETE ON contacts BEGIN " +
+                "UPDATE contact_sections SET count = count - 1 WHERE `group` = OLD.`group` AND section = OLD.section; END"
+        )
+
+        private val CREATE_CALLBACK = object : Callback() {
+            override fun onCreate(db: SupportSQLiteDatabase) {
+                CHANGE_TRIGGERS.forEach { db.execSQL(it) }
+                db.execSQL(TRIGRAM_DELETE_TRIGGER)
+                db.execSQL(PHONE_KEY_DELETE_TRIGGER)
+                SECTION_TRIGGERS.forEach { db.execSQL(it) }
+            }
+        }
+
+        // Fresh in-memory database with the same triggers, for tests
+        internal fun inMemoryBuilder(context: Context): Builder<ContactDatabase> =
+            Room.inMemoryDatabaseBuilder(context, ContactDatabase::class.java)
+                .addCallback(CREATE_CALLBACK)
+
+        fun getDatabase(context: Context, metrics: QueryMetrics? = null): ContactDatabase {
             return INSTANCE ?: synchronized(this) {
-                val instance = Room.databaseBuilder(
+                val builder = Room.databaseBuilder(
                     context.applicationContext,
                     ContactDatabase::class.java,
                     "secondary_contacts_db"
                 )
-                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
+                if (metrics != null) {
+                    builder
+                        .openHelperFactory(TimingOpenHelperFactory(FrameworkSQLiteOpenHelperFactory(), metrics))
+                        .setQueryCallback({ sql, args -> metrics.recordStatement(sql, args) }, Runnable::run)
+                }
+                val instance = builder
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14, MIGRATION_14_15, MIGRATION_15_16, MIGRATION_16_17)
+                    .addCallback(CREATE_CALLBACK)
                     .build()
                 INSTANCE = instance
                 instance
@@ -0,0 +1,58 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import java.io.OutputStream
+
+data class ExportProgress(
+    val rowsWritten: Int = 0,
+    val totalRows: Int = 0,
+    val done: Boolean = false,
+    val failed: Boolean = false
+)
+
+// Writes the whole book, independent of any on-screen filter, PAGE_SIZE rows at a time in id
+// order. Pages are keyed on the last exported id rather than an offset, so rows inserted or
+// deleted mid-export never shift later pages: every row present throughout is written exactly
+// once, and only rows changed concurrently reflect the page they were read in. Holding one
+// read transaction for the whole export would pin Room's single connection pool writer and
+// stall writes for the duration, so each page is its own short query instead. The stream is
+// closed on every path; write errors propagate to the collector, which reports them.
+class ContactExporter(database: ContactDatabase) {
+
+    enum class Format { CSV, VCARD }
+
+    private val dao = database.contactDao()
+
+    fun exportTo(outputStream: OutputStream, format: Format): Flow<ExportProgress> = flow {
+        var progress = ExportProgress()
+        // Done is only reported once close() has flushed everything to the provider
+        outputStream.bufferedWriter().use { writer ->
+            progress = progress.copy(totalRows = dao.countContacts())
+            emit(progress)
+            if (format == Format.CSV) ContactIO.writeCsvHeader(writer)
+            var afterId = 0
+            while (true) {
+                val page = dao.loadContactsAfter(afterId, PAGE_SIZE)
+                if (page.isEmpty()) break
+                page.forEach {
+                    when (format) {
+                        Format.CSV -> ContactIO.writeCsvRow(writer, it)
+                        Format.VCARD -> ContactIO.writeVCard(writer, it)
+                    }
+                }
+                afterId = page.last().id
+                val written = progress.rowsWritten + page.size
+                progress = progress.copy(rowsWritten = written, totalRows = maxOf(progress.totalRows, written))
+                emit(progress)
+            }
+        }
+        emit(progress.copy(done = true))
+    }.flowOn(Dispatchers.IO)
+
+    companion object {
+        private const val PAGE_SIZE = 1000
+    }
+}
@@ -0,0 +1,13 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+
+// unicode61 case-folds and strips diacritics beyond ASCII, so "emile" finds "Émile"
+@Fts4(contentEntity = Contact::class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "contacts_fts")
+data class ContactFts(
+    val name: String,
+    val phoneNumber: String
+)
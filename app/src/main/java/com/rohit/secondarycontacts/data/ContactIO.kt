@@ -1,134 +1,99 @@
 package com.rohit.secondarycontacts.data
 
-import java.io.BufferedReader
-import java.io.InputStream
-import java.io.InputStreamReader
-import java.io.OutputStream
+import android.net.Uri
+import java.io.File
+import java.io.Reader
+import java.io.Writer
 
 object ContactIO {
+    private val LINE_SEPARATOR = System.lineSeparator()
 
-    fun exportToCsv(contacts: List<Contact>, outputStream: OutputStream) {
-        outputStream.bufferedWriter().use { writer ->
-            writer.write("Name,PhoneNumber,Group,IsFavorite")
-            writer.newLine()
-            contacts.forEach { contact ->
-                val name = contact.name.replace("\"", "\"\"")
-                val phone = contact.phoneNumber.replace("\"", "\"\"")
-                val group = contact.group.replace("\"", "\"\"")
-                val fav = if (contact.isFavorite) "1" else "0"
-                writer.write("\"$name\",\"$phone\",\"$group\",$fav")
-                writer.newLine()
-            }
-        }
+    fun writeCsvHeader(writer: Writer) {
+        writer.write("Name,PhoneNumber,Group,IsFavorite")
+        writer.write(LINE_SEPARATOR)
     }
 
-    fun importFromCsv(inputStream: InputStream): List<Contact> {
-        val contacts = mutableListOf<Contact>()
-        BufferedReader(InputStreamReader(inputStream)).use { reader ->
-            // Skip header
-            reader.readLine()
-            var line = reader.readLine()
-            while (line != null) {
-                val parts = parseCsvLine(line)
-                if (parts.size >= 2) {
-                    contacts.add(
-                        Contact(
-                            name = parts[0],
-                            phoneNumber = parts[1],
-                            group = parts.getOrElse(2) { "" },
-                            isFavorite = parts.getOrElse(3) { "0" } == "1"
-                        )
-                    )
-                }
-                line = reader.readLine()
-            }
-        }
-        return contacts
+    fun writeCsvRow(writer: Writer, contact: Contact) {
+        val name = contact.name.replace("\"", "\"\"")
+        val phone = contact.phoneNumber.replace("\"", "\"\"")
+        val group = contact.group.replace("\"", "\"\"")
+        val fav = if (contact.isFavorite) "1" else "0"
+        writer.write("\"$name\",\"$phone\",\"$group\",$fav")
+        writer.write(LINE_SEPARATOR)
     }
 
-    private fun parseCsvLine(line: String): List<String> {
-        val result = mutableListOf<String>()
-        var current = StringBuilder()
-        var inQuotes = false
-        var i = 0
-        while (i < line.length) {
-            val c = line[i]
-            if (inQuotes) {
-                if (c == '"') {
-                    if (i + 1 < line.length && line[i + 1] == '"') {
-                        current.append('"')
-                        i++
-                    } else {
-                        inQuotes = false
-                    }
-                } else {
-                    current.append(c)
-                }
-            } else {
-                when (c) {
-                    '"' -> inQuotes = true
-                    ',' -> {
-                        result.add(current.toString())
-                        current = StringBuilder()
-                    }
-                    else -> current.append(c)
-                }
+    // Lazily parses one record per pull, so callers can consume it in bounded chunks
+    fun readCsv(reader: Reader, onError: () -> Unit = {}, hasHeader: Boolean = true): Sequence<Contact> = sequence {
+        val csv = CsvReader(reader)
+        if (hasHeader) csv.nextRecord()
+        while (csv.nextRecord()) {
+            val contact = contactFrom(csv)
+            if (contact != null) {
+                yield(contact)
+            } else if (!csv.isBlank()) {
+                onError()
             }
-            i++
         }
-        result.add(current.toString())
-        return result
     }
 
-    fun exportToVCard(contacts: List<Contact>, outputStream: OutputStream) {
-        outputStream.bufferedWriter().use { writer ->
-            contacts.forEach { contact ->
-                writer.write("BEGIN:VCARD")
-                writer.newLine()
-                writer.write("VERSION:3.0")
-                writer.newLine()
-                writer.write("FN:${contact.name}")
-                writer.newLine()
-                writer.write("TEL;TYPE=CELL:${contact.phoneNumber}")
-                writer.newLine()
-                if (contact.group.isNotEmpty()) {
-                    writer.write("CATEGORIES:${contact.group}")
-                    writer.newLine()
-                }
-                writer.write("END:VCARD")
-                writer.newLine()
-            }
-        }
+    // Materializes only the four columns we import
+    private fun contactFrom(csv: CsvReader): Contact? {
+        if (csv.fieldCount < 2) return null
+        return Contact(
+            name = csv.field(0),
+            phoneNumber = csv.field(1),
+            group = if (csv.fieldCount > 2) csv.field(2) else "",
+            isFavorite = csv.fieldCount > 3 && csv.fieldEquals(3, "1")
+        )
     }
 
-    fun importFromVCard(inputStream: InputStream): List<Contact> {
-        val contacts = mutableListOf<Contact>()
-        var name = ""
-        var phone = ""
-        var group = ""
+    fun writeVCard(writer: Writer, contact: Contact) {
+        writer.write("BEGIN:VCARD")
+        writer.write(LINE_SEPARATOR)
+        writer.write("VERSION:3.0")
+        writer.write(LINE_SEPARATOR)
+        writer.write("FN:${contact.name}")
+        writer.write(LINE_SEPARATOR)
+        writer.write("TEL;TYPE=CELL:${contact.phoneNumber}")
+        writer.write(LINE_SEPARATOR)
+        if (contact.group.isNotEmpty()) {
+            writer.write("CATEGORIES:${contact.group}")
+            writer.write(LINE_SEPARATOR)
+        }
+        writer.write("END:VCARD")
+        writer.write(LINE_SEPARATOR)
+    }
 
-        BufferedReader(InputStreamReader(inputStream)).use { reader ->
-            var line = reader.readLine()
-            while (line != null) {
-                val trimmed = line.trim()
-                when {
-                    trimmed.startsWith("FN:") -> name = trimmed.removePrefix("FN:")
-                    trimmed.startsWith("TEL") && trimmed.contains(":") -> {
-                        phone = trimmed.substringAfter(":")
-                    }
-                    trimmed.startsWith("CATEGORIES:") -> group = trimmed.removePrefix("CATEGORIES:")
-                    trimmed == "END:VCARD" -> {
-                        if (name.isNotBlank() && phone.isNotBlank()) {
-                            contacts.add(Contact(name = name, phoneNumber = phone, group = group))
-                        }
-                        name = ""
-                        phone = ""
-                        group = ""
-                    }
-                }
-                line = reader.readLine()
+    // One contact per card. The schema holds one number per contact, so the preferred (else
+    // first) TEL is kept; splitting the others into extra "Name (type)" contacts only filled
+    // the book with near-duplicates. Each further distinct number is reported through
+    // onDroppedNumber so the import can say how many were left out.
+    fun readVCard(
+        reader: Reader,
+        onError: () -> Unit = {},
+        photoDir: File? = null,
+        onDroppedNumber: () -> Unit = {}
+    ): Sequence<Contact> = sequence {
+        val cards = VCardReader(reader, photoDir)
+        while (true) {
+            val card = cards.next() ?: break
+            if (card.name.isBlank() || card.phones.isEmpty()) {
+                card.photoFile?.delete()
+                onError()
+            } else {
+                val phone = card.phones.firstOrNull { it.preferred } ?: card.phones.first()
+                val dropped = card.phones.mapTo(HashSet()) { PhoneDigits.normalize(it.number) }
+                dropped.remove(PhoneDigits.normalize(phone.number))
+                repeat(dropped.size) { onDroppedNumber() }
+                yield(
+                    Contact(
+                        name = card.name,
+                        phoneNumber = phone.number,
+                        group = card.category,
+                        photoUri = card.photoFile?.let { Uri.fromFile(it).toString() }
+                    )
+                )
             }
         }
-        return contacts
     }
 }
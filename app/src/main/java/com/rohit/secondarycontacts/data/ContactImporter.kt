@@ -0,0 +1,150 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import java.io.BufferedReader
+import java.io.File
+import java.io.FileInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+data class ImportProgress(
+    val bytesRead: Long = 0,
+    val totalBytes: Long? = null,
+    val rowsParsed: Int = 0,
+    val rowsWritten: Int = 0,
+    val errors: Int = 0,
+    // Further vCard numbers a contact could not hold
+    val droppedNumbers: Int = 0,
+    val done: Boolean = false,
+    val failed: Boolean = false
+)
+
+// Streams parsed records into the database CHUNK_SIZE rows at a time. Parsing pauses
+// while a chunk is written, so heap use and write-lock hold time are bounded per chunk.
+class ContactImporter(database: ContactDatabase, private val photoDir: File? = null) {
+
+    enum class Format { CSV, VCARD }
+
+    private val dao = database.contactDao()
+
+    fun importFrom(inputStream: InputStream, format: Format, totalBytes: Long? = null): Flow<ImportProgress> = flow {
+        val counting = CountingInputStream(inputStream)
+        var progress = ImportProgress(totalBytes = totalBytes)
+        var errors = 0
+        var droppedNumbers = 0
+        BufferedReader(InputStreamReader(counting)).use { reader ->
+            val records = when (format) {
+                Format.CSV -> ContactIO.readCsv(reader) { errors++ }
+                Format.VCARD -> ContactIO.readVCard(reader, { errors++ }, photoDir) { droppedNumbers++ }
+            }
+            records.chunked(CHUNK_SIZE).forEach { chunk ->
+                progress = progress.copy(
+                    bytesRead = counting.count,
+                    rowsParsed = progress.rowsParsed + chunk.size,
+                    errors = errors,
+                    droppedNumbers = droppedNumbers
+                )
+                emit(progress)
+                dao.insertAll(chunk)
+                progress = progress.copy(rowsWritten = progress.rowsWritten + chunk.size)
+                emit(progress)
+            }
+        }
+        emit(progress.copy(bytesRead = counting.count, errors = errors, droppedNumbers = droppedNumbers, done = true))
+    }.flowOn(Dispatchers.IO)
+
+    // Splits a seekable CSV file at record boundaries and parses the pieces on up to `workers`
+    // threads. Parsed chunks are consumed strictly in file order, at most `workers` ahead of the
+    // writer, and inserted through the same single-writer path as the streaming import.
+    @OptIn(ExperimentalCoroutinesApi::class)
+    fun importCsvParallel(input: FileInputStream, workers: Int = DEFAULT_WORKERS): Flow<ImportProgress> = flow {
+        input.use {
+            val channel = input.channel
+            val size = channel.size()
+            val dispatcher = Dispatchers.Default.limitedParallelism(workers)
+            var progress = ImportProgress(totalBytes = size)
+            coroutineScope {
+                CsvChunker.split(channel, PARALLEL_CHUNK_BYTES).asFlow()
+                    .map { range -> async(dispatcher) { parseCsvRange(channel, range) } }
+                    .buffer(workers)
+                    .collect { deferred ->
+                        val chunk = deferred.await()
+                        progress = progress.copy(
+                            bytesRead = chunk.end,
+                            rowsParsed = progress.rowsParsed + chunk.contacts.size,
+                            errors = progress.errors + chunk.errors
+                        )
+                        emit(progress)
+                        chunk.contacts.chunked(CHUNK_SIZE).forEach { rows ->
+                            dao.insertAll(rows)
+                            progress = progress.copy(rowsWritten = progress.rowsWritten + rows.size)
+                            emit(progress)
+                        }
+                    }
+            }
+            emit(progress.copy(bytesRead = size, done = true))
+        }
+    }.flowOn(Dispatchers.IO)
+
+    private class ParsedChunk(val contacts: List<Contact>, val errors: Int, val end: Long)
+
+    private fun parseCsvRange(channel: FileChannel, range: LongRange): ParsedChunk {
+        val mapped = channel.map(FileChannel.MapMode.READ_ONLY, range.first, range.last - range.first + 1)
+        var errors = 0
+        val reader = InputStreamReader(ByteBufferInputStream(mapped), Charsets.UTF_8)
+        val contacts = ContactIO.readCsv(reader, { errors++ }, hasHeader = false).toList()
+        return ParsedChunk(contacts, errors, range.last + 1)
+    }
+
+    private class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+        override fun read(): Int = if (buffer.hasRemaining()) buffer.get().toInt() and 0xFF else -1
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (!buffer.hasRemaining()) return -1
+            val n = minOf(len, buffer.remaining())
+            buffer.get(b, off, n)
+            return n
+        }
+    }
+
+    private class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+        var count = 0L
+            private set
+
+        override fun read(): Int {
+            val b = super.read()
+            if (b >= 0) count++
+            return b
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val n = super.read(b, off, len)
+            if (n > 0) count += n
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = super.skip(n)
+            count += skipped
+            return skipped
+        }
+    }
+
+    companion object {
+        private const val CHUNK_SIZE = 500
+        private const val PARALLEL_CHUNK_BYTES = 1L shl 20
+        private val DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors().coerceIn(1, 8)
+    }
+}
@@ -0,0 +1,16 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.Entity
+import androidx.room.Index
+
+// One row per digit run of a number, holding the digits from that run to the end, so that
+// dialing from the start of any group is an index range
+@Entity(
+    tableName = "contact_phone_keys",
+    primaryKeys = ["digits", "contactId"],
+    indices = [Index(value = ["contactId"])]
+)
+data class ContactPhoneKey(
+    val digits: String,
+    val contactId: Int
+)
@@ -0,0 +1,35 @@
+package com.rohit.secondarycontacts.data
+
+import android.net.Uri
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import java.io.File
+
+// Photos copied out of imported vCards. Deleting, merging, editing or restoring a contact can
+// leave its file unreferenced, so once per process start every file no row points at any more
+// is removed. Files written since then are left alone: an import in progress may not have
+// inserted their rows yet.
+class ContactPhotos(
+    database: ContactDatabase,
+    val dir: File,
+    private val scope: CoroutineScope
+) {
+    private val dao = database.contactDao()
+
+    fun start() {
+        val startedAt = System.currentTimeMillis()
+        scope.launch(Dispatchers.IO) { sweep(startedAt) }
+    }
+
+    internal suspend fun sweep(olderThan: Long): Int {
+        val files = dir.listFiles() ?: return 0
+        val referenced = dao.loadPhotoUrisUnder(Uri.fromFile(dir).toString()).toHashSet()
+        return files.count { file ->
+            file.isFile &&
+                file.lastModified() < olderThan &&
+                Uri.fromFile(file).toString() !in referenced &&
+                file.delete()
+        }
+    }
+}
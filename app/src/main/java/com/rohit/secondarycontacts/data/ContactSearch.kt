@@ -0,0 +1,15 @@
+package com.rohit.secondarycontacts.data
+
+object ContactSearch {
+
+    // Turns free text into an FTS4 MATCH expression of prefix tokens ("jo sm" -> "jo* sm*").
+    // Returns null when nothing indexable is left, so callers can fall back to LIKE.
+    fun toFtsMatch(query: String): String? {
+        val tokens = query
+            .split(Regex("[^\\p{L}\\p{N}]+"))
+            .filter { it.isNotEmpty() }
+            .map { it.lowercase() }
+        if (tokens.isEmpty()) return null
+        return tokens.joinToString(" ") { "$it*" }
+    }
+}
@@ -0,0 +1,17 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+
+// Row counts per (group, alphabetic bucket), maintained by triggers on contacts
+@Entity(tableName = "contact_sections", primaryKeys = ["group", "section"])
+data class ContactSection(
+    @ColumnInfo(name = "group") val group: String,
+    val section: Int,
+    val count: Int
+)
+
+data class SectionCount(
+    val section: Int,
+    val count: Int
+)
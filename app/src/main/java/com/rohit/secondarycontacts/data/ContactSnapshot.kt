@@ -0,0 +1,170 @@
+package com.rohit.secondarycontacts.data
+
+import android.content.Context
+import android.util.AtomicFile
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.launch
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.AtomicBoolean
+
+data class ContactSnapshot(
+    val favorites: List<Contact>,
+    val recents: List<Contact>,
+    val firstPage: List<Contact>
+) {
+    companion object {
+        val EMPTY = ContactSnapshot(emptyList(), emptyList(), emptyList())
+    }
+}
+
+// What the first screens show, persisted outside Room so a cold start can render it before
+// the database is opened. Rewritten atomically shortly after each batch of changes; writing
+// only starts once something has asked for live data anyway.
+class ContactSnapshotStore(
+    context: Context,
+    private val scope: CoroutineScope
+) {
+    private val file = AtomicFile(File(context.filesDir, FILE_NAME))
+    private val started = AtomicBoolean(false)
+
+    // Read once on first access; a missing, stale-format or corrupt file yields EMPTY
+    val initial: ContactSnapshot by lazy { read() ?: ContactSnapshot.EMPTY }
+
+    @OptIn(FlowPreview::class)
+    fun startWriting(database: ContactDatabase, changeFeed: ContactChangeFeed) {
+        if (!started.compareAndSet(false, true)) return
+        val dao = database.contactDao()
+        scope.launch(Dispatchers.IO) {
+            changeFeed.batches
+                .map { }
+                .onStart { emit(Unit) }
+                .debounce(WRITE_DELAY_MS)
+                .collect {
+                    write(
+                        ContactSnapshot(
+                            favorites = dao.loadFavorites(FAVORITES_LIMIT),
+                            recents = dao.loadRecentlyContacted(RECENTS_LIMIT),
+                            firstPage = dao.loadFirstPage(FIRST_PAGE_SIZE)
+                        )
+                    )
+                }
+        }
+    }
+
+    // openRead restores the last complete file if a write was interrupted; a missing file
+    // throws and reads as null like any other unreadable one
+    private fun read(): ContactSnapshot? {
+        return try {
+            file.openRead().use { input ->
+                val channel = input.channel
+                val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                if (buffer.int != MAGIC || buffer.int != VERSION) return null
+                ContactSnapshot(
+                    favorites = readContacts(buffer),
+                    recents = readContacts(buffer),
+                    firstPage = readContacts(buffer)
+                )
+            }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    internal fun write(snapshot: ContactSnapshot) {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            writeContacts(out, snapshot.favorites)
+            writeContacts(out, snapshot.recents)
+            writeContacts(out, snapshot.firstPage)
+        }
+        val stream = file.startWrite()
+        try {
+            bytes.writeTo(stream)
+            file.finishWrite(stream)
+        } catch (e: Exception) {
+            file.failWrite(stream)
+        }
+    }
+
+    private fun writeContacts(out: DataOutputStream, contacts: List<Contact>) {
+        out.writeInt(contacts.size)
+        for (contact in contacts) {
+            out.writeInt(contact.id)
+            out.writeBoolean(contact.isFavorite)
+            out.writeLong(contact.lastCalledAt ?: NO_CALL)
+            out.writeInt(contact.callCount)
+            out.writeInt(contact.section)
+            writeString(out, contact.name)
+            writeString(out, contact.phoneNumber)
+            writeString(out, contact.displayNumber)
+            writeString(out, contact.group)
+            writeString(out, contact.photoUri.orEmpty())
+        }
+    }
+
+    // Lengths are checked against what is left, so a corrupt count fails the read instead of
+    // allocating a huge array
+    private fun readContacts(buffer: ByteBuffer): List<Contact> {
+        val count = buffer.int
+        if (count < 0 || count > buffer.remaining() / MIN_CONTACT_BYTES) throw IOException("Bad contact count $count")
+        return List(count) {
+            val id = buffer.int
+            val isFavorite = buffer.get() != 0.toByte()
+            val lastCalledAt = buffer.long.takeIf { it != NO_CALL }
+            val callCount = buffer.int
+            val section = buffer.int
+            Contact(
+                id = id,
+                isFavorite = isFavorite,
+                lastCalledAt = lastCalledAt,
+                callCount = callCount,
+                section = section,
+                name = readString(buffer),
+                phoneNumber = readString(buffer),
+                displayNumber = readString(buffer),
+                group = readString(buffer),
+                photoUri = readString(buffer).ifEmpty { null }
+            )
+        }
+    }
+
+    // Int length + UTF-8 rather than writeUTF's modified UTF-8, so the mapped buffer decodes directly
+    private fun writeString(out: DataOutputStream, value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        out.writeInt(bytes.size)
+        out.write(bytes)
+    }
+
+    private fun readString(buffer: ByteBuffer): String {
+        val length = buffer.int
+        if (length < 0 || length > buffer.remaining()) throw IOException("Bad string length $length")
+        val bytes = ByteArray(length)
+        buffer.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    companion object {
+        private const val FILE_NAME = "contacts.snapshot"
+        private const val MAGIC = 0x43534E50 // "CSNP"
+        private const val VERSION = 1
+        private const val NO_CALL = -1L
+        // Fixed fields plus the five string lengths
+        private const val MIN_CONTACT_BYTES = 4 + 1 + 8 + 4 + 4 + 5 * 4
+        private const val WRITE_DELAY_MS = 2000L
+        private const val FAVORITES_LIMIT = 50
+        private const val RECENTS_LIMIT = 10
+        private const val FIRST_PAGE_SIZE = 100
+    }
+}
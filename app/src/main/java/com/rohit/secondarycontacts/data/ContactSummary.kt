@@ -0,0 +1,9 @@
+package com.rohit.secondarycontacts.data
+
+// Fields the in-memory dialer index needs per contact
+data class ContactSummary(
+    val id: Int,
+    val name: String,
+    val lastCalledAt: Long?,
+    val callCount: Int
+)
@@ -0,0 +1,19 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.Entity
+import androidx.room.Index
+
+@Entity(
+    tableName = "contact_trigrams",
+    primaryKeys = ["trigram", "contactId"],
+    indices = [Index(value = ["contactId"])]
+)
+data class ContactTrigram(
+    val trigram: String,
+    val contactId: Int
+)
+
+data class TrigramHit(
+    val contactId: Int,
+    val shared: Int
+)
@@ -0,0 +1,110 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.room.withTransaction
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+
+// Single writer for small per-contact mutations. Ops queued within WINDOW_MS (or up to
+// MAX_BATCH ops) are collapsed per contact and committed in one transaction.
+class ContactWriteQueue(private val database: ContactDatabase, scope: CoroutineScope) {
+
+    sealed class Op {
+        abstract val contactId: Int
+
+        data class ToggleFavorite(override val contactId: Int) : Op()
+        data class MarkCalled(override val contactId: Int, val timestamp: Long) : Op()
+        data class Update(val contact: Contact) : Op() {
+            override val contactId: Int get() = contact.id
+        }
+        data class Delete(override val contactId: Int) : Op()
+    }
+
+    private class Pending(val op: Op, val ack: CompletableDeferred<Unit>)
+
+    // Net effect of a batch on one contact, applied in the order: update, favorite, call
+    private class Collapsed {
+        var update: Contact? = null
+        var favoriteFlips = 0
+        var calledAt: Long? = null
+        var calls = 0
+        var delete = false
+    }
+
+    private val dao = database.contactDao()
+    private val queue = Channel<Pending>(Channel.UNLIMITED)
+
+    init {
+        scope.launch {
+            while (true) {
+                val batch = mutableListOf(queue.receive())
+                withTimeoutOrNull(WINDOW_MS) {
+                    while (batch.size < MAX_BATCH) batch += queue.receive()
+                }
+                flush(batch)
+            }
+        }
+    }
+
+    fun enqueue(op: Op): Deferred<Unit> {
+        val ack = CompletableDeferred<Unit>()
+        queue.trySend(Pending(op, ack))
+        return ack
+    }
+
+    fun toggleFavorite(contactId: Int) = enqueue(Op.ToggleFavorite(contactId))
+
+    fun markCalled(contactId: Int, timestamp: Long) = enqueue(Op.MarkCalled(contactId, timestamp))
+
+    fun update(contact: Contact) = enqueue(Op.Update(contact))
+
+    fun delete(contactId: Int) = enqueue(Op.Delete(contactId))
+
+    private suspend fun flush(batch: List<Pending>) {
+        val collapsed = LinkedHashMap<Int, Collapsed>()
+        for (pending in batch) {
+            val state = collapsed.getOrPut(pending.op.contactId) { Collapsed() }
+            if (state.delete) continue
+            when (val op = pending.op) {
+                is Op.ToggleFavorite -> state.favoriteFlips++
+                is Op.MarkCalled -> {
+                    state.calledAt = maxOf(state.calledAt ?: op.timestamp, op.timestamp)
+                    state.calls++
+                }
+                // A full-row update overwrites whatever earlier ops changed
+                is Op.Update -> {
+                    state.update = op.contact
+                    state.favoriteFlips = 0
+                    state.calledAt = null
+                    state.calls = 0
+                }
+                is Op.Delete -> state.delete = true
+            }
+        }
+
+        try {
+            database.withTransaction {
+                for ((id, state) in collapsed) {
+                    if (state.delete) {
+                        dao.deleteById(id)
+                        continue
+                    }
+                    state.update?.let { dao.update(it) }
+                    if (state.favoriteFlips % 2 == 1) dao.flipFavorite(id)
+                    state.calledAt?.let { dao.markCalled(id, it, state.calls) }
+                }
+            }
+            batch.forEach { it.ack.complete(Unit) }
+        } catch (e: Exception) {
+            batch.forEach { it.ack.completeExceptionally(e) }
+        }
+    }
+
+    companion object {
+        private const val WINDOW_MS = 50L
+        private const val MAX_BATCH = 64
+    }
+}
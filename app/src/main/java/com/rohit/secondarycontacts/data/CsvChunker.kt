@@ -0,0 +1,86 @@
+package com.rohit.secondarycontacts.data
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+// Splits a CSV file into byte ranges that each start at a record boundary, so the ranges can
+// be parsed independently. One sequential byte pass runs the same field states as CsvReader:
+// a quote only opens a quoted field at field start, and '\n', '\r' or "\r\n" end a record
+// outside quotes. All of these are ASCII and never occur inside a UTF-8 multi-byte sequence,
+// so no decoding is needed.
+object CsvChunker {
+    private const val SCAN_BUFFER_SIZE = 1 shl 20
+
+    // The first range starts after the header record
+    fun split(channel: FileChannel, targetChunkBytes: Long): List<LongRange> {
+        val size = channel.size()
+        val ranges = ArrayList<LongRange>()
+        val buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE)
+        var state = FIELD_START
+        var afterCarriageReturn = false
+        var headerDone = false
+        var chunkStart = 0L
+        var position = 0L
+
+        fun recordEndsAt(next: Long) {
+            if (!headerDone) {
+                headerDone = true
+                chunkStart = next
+            } else if (next - chunkStart >= targetChunkBytes) {
+                ranges += chunkStart until next
+                chunkStart = next
+            }
+        }
+
+        while (position < size) {
+            buffer.clear()
+            val read = channel.read(buffer, position)
+            if (read <= 0) break
+            buffer.flip()
+            for (i in 0 until read) {
+                val b = buffer.get(i)
+                val offset = position + i
+                // A record ended at '\r'; the boundary goes after a following '\n'
+                if (afterCarriageReturn) {
+                    afterCarriageReturn = false
+                    if (b == LINE_FEED) {
+                        recordEndsAt(offset + 1)
+                        continue
+                    }
+                    recordEndsAt(offset)
+                }
+                state = when (state) {
+                    QUOTED -> if (b == QUOTE) QUOTE_IN_QUOTED else QUOTED
+                    QUOTE_IN_QUOTED -> if (b == QUOTE) QUOTED else outsideQuotes(b)
+                    FIELD_START -> if (b == QUOTE) QUOTED else outsideQuotes(b)
+                    else -> outsideQuotes(b)
+                }
+                if (state == RECORD_END) {
+                    if (b == CARRIAGE_RETURN) afterCarriageReturn = true else recordEndsAt(offset + 1)
+                    state = FIELD_START
+                }
+            }
+            position += read
+        }
+        if (afterCarriageReturn) recordEndsAt(size)
+        if (headerDone && chunkStart < size) ranges += chunkStart until size
+        return ranges
+    }
+
+    private fun outsideQuotes(b: Byte): Int = when (b) {
+        COMMA -> FIELD_START
+        LINE_FEED, CARRIAGE_RETURN -> RECORD_END
+        else -> UNQUOTED
+    }
+
+    private const val FIELD_START = 0
+    private const val UNQUOTED = 1
+    private const val QUOTED = 2
+    private const val QUOTE_IN_QUOTED = 3
+    private const val RECORD_END = 4
+
+    private const val QUOTE = '"'.code.toByte()
+    private const val COMMA = ','.code.toByte()
+    private const val LINE_FEED = '\n'.code.toByte()
+    private const val CARRIAGE_RETURN = '\r'.code.toByte()
+}
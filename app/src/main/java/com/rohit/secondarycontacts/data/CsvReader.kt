@@ -0,0 +1,115 @@
+package com.rohit.secondarycontacts.data
+
+import java.io.Reader
+
+// RFC 4180 record reader. Characters are pulled through a fixed read buffer and each record's
+// field contents are copied into one reusable scratch array, so quoted fields may span lines
+// and no String exists until a caller asks for a column with field().
+class CsvReader(private val reader: Reader, bufferSize: Int = DEFAULT_BUFFER_SIZE) {
+    private val buffer = CharArray(bufferSize)
+    private var position = 0
+    private var limit = 0
+    private var eof = false
+
+    private var chars = CharArray(256)
+    private var length = 0
+    private var fieldEnds = IntArray(16)
+
+    var fieldCount = 0
+        private set
+
+    // Parses the next record into the scratch buffers; false once input is exhausted
+    fun nextRecord(): Boolean {
+        length = 0
+        fieldCount = 0
+        var state = FIELD_START
+        var sawAny = false
+        while (true) {
+            if (position == limit && !fill()) {
+                if (!sawAny) return false
+                endField()
+                return true
+            }
+            val c = buffer[position++]
+            sawAny = true
+            when (state) {
+                FIELD_START -> when (c) {
+                    '"' -> state = QUOTED
+                    ',' -> endField()
+                    '\n' -> { endField(); return true }
+                    '\r' -> { endField(); skipLineFeed(); return true }
+                    else -> { append(c); state = UNQUOTED }
+                }
+                UNQUOTED -> when (c) {
+                    ',' -> { endField(); state = FIELD_START }
+                    '\n' -> { endField(); return true }
+                    '\r' -> { endField(); skipLineFeed(); return true }
+                    else -> append(c)
+                }
+                QUOTED -> if (c == '"') state = QUOTE_IN_QUOTED else append(c)
+                QUOTE_IN_QUOTED -> when (c) {
+                    '"' -> { append('"'); state = QUOTED }
+                    ',' -> { endField(); state = FIELD_START }
+                    '\n' -> { endField(); return true }
+                    '\r' -> { endField(); skipLineFeed(); return true }
+                    // Lenient: text after a closing quote is kept, as the old line parser did
+                    else -> { append(c); state = UNQUOTED }
+                }
+            }
+        }
+    }
+
+    fun field(index: Int): String {
+        val start = if (index == 0) 0 else fieldEnds[index - 1]
+        return String(chars, start, fieldEnds[index] - start)
+    }
+
+    fun fieldEquals(index: Int, value: String): Boolean {
+        val start = if (index == 0) 0 else fieldEnds[index - 1]
+        val end = fieldEnds[index]
+        if (end - start != value.length) return false
+        for (i in value.indices) if (chars[start + i] != value[i]) return false
+        return true
+    }
+
+    // A blank line parses as a single whitespace-only field
+    fun isBlank(): Boolean {
+        if (fieldCount != 1) return false
+        for (i in 0 until length) if (!chars[i].isWhitespace()) return false
+        return true
+    }
+
+    private fun append(c: Char) {
+        if (length == chars.size) chars = chars.copyOf(length * 2)
+        chars[length++] = c
+    }
+
+    private fun endField() {
+        if (fieldCount == fieldEnds.size) fieldEnds = fieldEnds.copyOf(fieldCount * 2)
+        fieldEnds[fieldCount++] = length
+    }
+
+    private fun skipLineFeed() {
+        if ((position < limit || fill()) && buffer[position] == '\n') position++
+    }
+
+    private fun fill(): Boolean {
+        if (eof) return false
+        val read = reader.read(buffer, 0, buffer.size)
+        if (read <= 0) {
+            eof = true
+            return false
+        }
+        position = 0
+        limit = read
+        return true
+    }
+
+    companion object {
+        private const val DEFAULT_BUFFER_SIZE = 64 * 1024
+        private const val FIELD_START = 0
+        private const val UNQUOTED = 1
+        private const val QUOTED = 2
+        private const val QUOTE_IN_QUOTED = 3
+    }
+}
@@ -0,0 +1,135 @@
+package com.rohit.secondarycontacts.data
+
+import java.text.Normalizer
+
+data class DuplicateKey(
+    val id: Int,
+    val name: String,
+    val normalizedDigits: String
+)
+
+data class DuplicateGroup(
+    val contactIds: List<Int>,
+    val score: Double
+)
+
+data class DuplicateMatch(
+    val contacts: List<Contact>,
+    val score: Double
+) {
+    // A contact holds one number, so rows with different numbers are never merged
+    val mergeable: Boolean get() = DuplicateDetector.sameNumber(contacts.map { it.phoneNumber })
+}
+
+// Finds likely duplicates without comparing every pair: rows are bucketed by phone suffix and
+// by normalized name, only rows sharing a bucket are scored, and matching pairs are joined
+// into groups with union-find.
+class DuplicateDetector(database: ContactDatabase) {
+    private val dao = database.contactDao()
+
+    suspend fun findGroups(): List<DuplicateGroup> {
+        val rows = ArrayList<DuplicateKey>()
+        var afterId = 0
+        while (true) {
+            val chunk = dao.loadDuplicateKeysAfter(afterId, CHUNK_SIZE)
+            if (chunk.isEmpty()) break
+            rows += chunk
+            afterId = chunk.last().id
+        }
+
+        val nameKeys = Array(rows.size) { nameKey(rows[it].name) }
+        val phoneKeys = Array(rows.size) { phoneKey(rows[it].normalizedDigits) }
+        val buckets = HashMap<String, MutableList<Int>>()
+        for (i in rows.indices) {
+            phoneKeys[i]?.let { buckets.getOrPut("p:$it") { ArrayList(2) }.add(i) }
+            if (nameKeys[i].isNotEmpty()) buckets.getOrPut("n:${nameKeys[i]}") { ArrayList(2) }.add(i)
+        }
+
+        val parent = IntArray(rows.size) { it }
+        val best = DoubleArray(rows.size)
+        fun find(i: Int): Int {
+            var root = i
+            while (parent[root] != root) root = parent[root]
+            var node = i
+            while (parent[node] != root) {
+                val next = parent[node]
+                parent[node] = root
+                node = next
+            }
+            return root
+        }
+
+        for (members in buckets.values) {
+            // Shared switchboard numbers and very common names would make this quadratic
+            if (members.size < 2 || members.size > MAX_BUCKET_SIZE) continue
+            for (a in 0 until members.size - 1) {
+                for (b in a + 1 until members.size) {
+                    val i = members[a]
+                    val j = members[b]
+                    val score = score(rows[i], rows[j], nameKeys[i], nameKeys[j], phoneKeys[i], phoneKeys[j])
+                    if (score < MIN_SCORE) continue
+                    val rootI = find(i)
+                    val rootJ = find(j)
+                    val merged = maxOf(score, best[rootI], best[rootJ])
+                    if (rootI != rootJ) parent[rootJ] = rootI
+                    best[rootI] = merged
+                }
+            }
+        }
+
+        val groups = HashMap<Int, MutableList<Int>>()
+        for (i in rows.indices) {
+            groups.getOrPut(find(i)) { ArrayList(1) }.add(rows[i].id)
+        }
+        return groups.entries
+            .filter { it.value.size > 1 }
+            .map { (root, ids) -> DuplicateGroup(ids.sorted(), best[root]) }
+            .sortedByDescending { it.score }
+    }
+
+    companion object {
+        private const val CHUNK_SIZE = 2000
+        private const val MAX_BUCKET_SIZE = 50
+        private const val PHONE_KEY_DIGITS = 9
+        private const val MIN_SCORE = 0.4
+        private const val MIN_NUMBER_DIGITS = 7
+        private val DIACRITICS = Regex("\\p{Mn}+")
+        private val NON_LETTERS = Regex("[^\\p{L}\\p{N}]+")
+
+        // Lowercased, accent-free words in sorted order, so "Doe, John" and "john doe" collide
+        fun nameKey(name: String): String =
+            Normalizer.normalize(name, Normalizer.Form.NFD)
+                .replace(DIACRITICS, "")
+                .lowercase()
+                .split(NON_LETTERS)
+                .filter { it.isNotEmpty() }
+                .sorted()
+                .joinToString(" ")
+
+        // Trailing digits ignore country/trunk prefixes; too-short numbers are not keyed
+        fun phoneKey(digits: String): String? =
+            if (digits.length < 7) null else digits.takeLast(PHONE_KEY_DIGITS)
+
+        // Same number carries most of the weight; an identical name alone still surfaces the pair,
+        // ranked below number matches, since merging is always confirmed by the user
+        fun score(a: DuplicateKey, b: DuplicateKey, nameA: String, nameB: String, phoneA: String?, phoneB: String?): Double {
+            val phone = if (phoneA != null && phoneA == phoneB) 0.6 else 0.0
+            val name = if (nameA == nameB) 1.0 else jaccard(Trigrams.of(a.name), Trigrams.of(b.name))
+            return phone + 0.4 * name
+        }
+
+        // Every non-empty number is the longest one, or its last 7+ digits (a missing country or
+        // trunk prefix), so keeping the longest loses nothing
+        fun sameNumber(numbers: List<String>): Boolean {
+            val digits = numbers.map { PhoneDigits.normalize(it) }.filter { it.isNotEmpty() }
+            val longest = digits.maxByOrNull { it.length } ?: return true
+            return digits.all { it == longest || (it.length >= MIN_NUMBER_DIGITS && longest.endsWith(it)) }
+        }
+
+        private fun jaccard(a: Set<String>, b: Set<String>): Double {
+            if (a.isEmpty() || b.isEmpty()) return 0.0
+            val shared = a.count { it in b }
+            return shared.toDouble() / (a.size + b.size - shared)
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.onSubscription
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.util.concurrent.atomic.AtomicBoolean
+
+// Typo-tolerant name search: contacts that share enough trigrams with the query are proposed,
+// then substring edit distance orders them. Candidates come from a TrigramIndex built on the
+// first search and patched from the change feed; until it is built, the trigram table answers.
+class FuzzySearch(
+    database: ContactDatabase,
+    private val changeFeed: ContactChangeFeed,
+    private val scope: CoroutineScope
+) {
+    private val dao = database.contactDao()
+    private val index = TrigramIndex()
+    private val started = AtomicBoolean(false)
+
+    private val _ready = MutableStateFlow(false)
+    val ready: StateFlow<Boolean> = _ready.asStateFlow()
+
+    // Fires once the index is built and after each change batch it takes in, so results
+    // reloaded on it are current
+    private val _updates = MutableSharedFlow<Unit>(extraBufferCapacity = 1, onBufferOverflow = BufferOverflow.DROP_OLDEST)
+    val updates: SharedFlow<Unit> = _updates.asSharedFlow()
+
+    // A group narrows the candidates before CANDIDATE_LIMIT, so its matches are not crowded out
+    // by other groups
+    suspend fun search(query: String, group: String? = null, limit: Int = RESULT_LIMIT): List<Contact> {
+        val trimmed = query.trim()
+        val grams = Trigrams.of(trimmed)
+        if (grams.isEmpty()) return emptyList()
+        if (started.compareAndSet(false, true)) startIndex()
+
+        val minShared = (grams.size / 3).coerceAtLeast(1)
+        val candidates = if (_ready.value) {
+            withContext(Dispatchers.Default) {
+                synchronized(index) { index.candidates(grams, minShared, group, CANDIDATE_LIMIT) }
+            }
+        } else {
+            tableCandidates(grams, minShared, group)
+        }
+        if (candidates.isEmpty()) return emptyList()
+
+        val maxDistance = (trimmed.length / 3).coerceAtLeast(1)
+        val ids = candidates
+            .map { it to Trigrams.substringEditDistance(trimmed, it.name) }
+            .filter { (_, distance) -> distance <= maxDistance }
+            .sortedWith(
+                compareBy<Pair<TrigramIndex.Hit, Int>> { it.second }
+                    .thenByDescending { it.first.shared }
+                    .thenBy { it.first.name }
+            )
+            .take(limit)
+            .map { it.first.contactId }
+        val byId = dao.getContactsByIds(ids).associateBy { it.id }
+        return ids.mapNotNull { byId[it] }
+    }
+
+    private suspend fun tableCandidates(grams: Set<String>, minShared: Int, group: String?): List<TrigramIndex.Hit> {
+        val hits = if (group == null) {
+            dao.findTrigramCandidates(grams.toList(), minShared, CANDIDATE_LIMIT)
+        } else {
+            dao.findTrigramCandidatesInGroup(grams.toList(), group, minShared, CANDIDATE_LIMIT)
+        }
+        if (hits.isEmpty()) return emptyList()
+        val names = dao.getContactNamesByIds(hits.map { it.contactId }).associate { it.id to it.name }
+        return hits.mapNotNull { hit -> names[hit.contactId]?.let { TrigramIndex.Hit(hit.contactId, it, hit.shared) } }
+    }
+
+    private fun startIndex() {
+        scope.launch {
+            val pending = Channel<List<ContactChange>>(Channel.UNLIMITED)
+            val subscribed = CompletableDeferred<Unit>()
+            launch {
+                changeFeed.batches
+                    .onSubscription { subscribed.complete(Unit) }
+                    .collect { pending.send(it) }
+            }
+            subscribed.await()
+            build()
+            _ready.value = true
+            _updates.tryEmit(Unit)
+            for (batch in pending) {
+                apply(batch)
+                _updates.tryEmit(Unit)
+            }
+        }
+    }
+
+    private suspend fun build() {
+        var afterId = 0
+        while (true) {
+            val page = dao.loadContactNamesAfter(afterId, BUILD_PAGE_SIZE)
+            if (page.isEmpty()) break
+            synchronized(index) { page.forEach { index.put(it) } }
+            afterId = page.last().id
+        }
+    }
+
+    private suspend fun apply(batch: List<ContactChange>) {
+        batch.map { it.contactId }.distinct().chunked(BUILD_PAGE_SIZE).forEach { ids ->
+            val rows = dao.getContactNamesByIds(ids).associateBy { it.id }
+            synchronized(index) {
+                ids.forEach { id ->
+                    val row = rows[id]
+                    if (row != null) index.put(row) else index.remove(id)
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val CANDIDATE_LIMIT = 200
+        private const val RESULT_LIMIT = 50
+        private const val BUILD_PAGE_SIZE = 500
+    }
+}
@@ -0,0 +1,28 @@
+package com.rohit.secondarycontacts.data
+
+object PhoneDigits {
+
+    fun normalize(raw: String): String = raw.filter { it in '0'..'9' }
+
+    fun reversed(raw: String): String = normalize(raw).reversed()
+
+    // "+91 98765 43210" -> 919876543210, 9876543210, 43210
+    fun runKeys(raw: String): Set<String> {
+        val digits = normalize(raw)
+        val keys = LinkedHashSet<String>()
+        var seen = 0
+        for (i in raw.indices) {
+            if (raw[i] !in '0'..'9') continue
+            if (i == 0 || raw[i - 1] !in '0'..'9') keys += digits.substring(seen)
+            seen++
+        }
+        return keys
+    }
+
+    // Dialed digits match from the start of a digit run or as the end of the number
+    fun matchesDialed(raw: String, digits: String): Boolean =
+        digits.isNotEmpty() && (runKeys(raw).any { it.startsWith(digits) } || normalize(raw).endsWith(digits))
+
+    fun keyRows(contactId: Int, raw: String): List<ContactPhoneKey> =
+        runKeys(raw).map { ContactPhoneKey(it, contactId) }
+}
@@ -0,0 +1,32 @@
+package com.rohit.secondarycontacts.data
+
+import android.telephony.PhoneNumberUtils
+import android.util.LruCache
+import java.util.Locale
+
+object PhoneFormatter {
+    private const val CACHE_SIZE = 512
+
+    private val cache = LruCache<String, String>(CACHE_SIZE)
+
+    // Null follows the device locale's country
+    @Volatile
+    var regionOverride: String? = null
+        set(value) {
+            field = value?.uppercase()
+            cache.evictAll()
+        }
+
+    val region: String
+        get() = regionOverride ?: Locale.getDefault().country.ifEmpty { "US" }
+
+    fun format(raw: String): String {
+        if (raw.isEmpty()) return raw
+        val region = region
+        val key = "$region|$raw"
+        cache.get(key)?.let { return it }
+        val formatted = PhoneNumberUtils.formatNumber(raw, region) ?: raw
+        cache.put(key, formatted)
+        return formatted
+    }
+}
@@ -0,0 +1,140 @@
+package com.rohit.secondarycontacts.data
+
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+
+// Per-statement latency and row counts, fed by TimingOpenHelperFactory and Room's query callback
+class QueryMetrics {
+
+    data class Snapshot(
+        val sql: String,
+        val count: Long,
+        val p50Micros: Long,
+        val p95Micros: Long,
+        val p99Micros: Long,
+        val maxMicros: Long,
+        val totalRows: Long,
+        val mainThreadCount: Long
+    )
+
+    private class Stats {
+        val histogram = LatencyHistogram()
+        var count = 0L
+        var maxMicros = 0L
+        var totalRows = 0L
+        var mainThreadCount = 0L
+    }
+
+    private val stats = ConcurrentHashMap<String, Stats>()
+    private val recentStatements = ArrayDeque<String>()
+
+    fun record(sql: String, micros: Long, rows: Int, onMainThread: Boolean) {
+        val entry = stats.getOrPut(normalize(sql)) { Stats() }
+        synchronized(entry) {
+            entry.histogram.record(micros)
+            entry.count++
+            entry.maxMicros = maxOf(entry.maxMicros, micros)
+            if (rows > 0) entry.totalRows += rows
+            if (onMainThread) entry.mainThreadCount++
+        }
+    }
+
+    fun recordStatement(sql: String, args: List<Any?>) {
+        synchronized(recentStatements) {
+            recentStatements.addLast(if (args.isEmpty()) sql else "$sql $args")
+            if (recentStatements.size > RECENT_LIMIT) recentStatements.removeFirst()
+        }
+    }
+
+    fun snapshot(): List<Snapshot> = stats.map { (sql, entry) ->
+        synchronized(entry) {
+            Snapshot(
+                sql = sql,
+                count = entry.count,
+                p50Micros = entry.histogram.percentile(0.50),
+                p95Micros = entry.histogram.percentile(0.95),
+                p99Micros = entry.histogram.percentile(0.99),
+                maxMicros = entry.maxMicros,
+                totalRows = entry.totalRows,
+                mainThreadCount = entry.mainThreadCount
+            )
+        }
+    }.sortedByDescending { it.p95Micros }
+
+    fun recentStatements(): List<String> = synchronized(recentStatements) { recentStatements.toList() }
+
+    fun reset() {
+        stats.clear()
+        synchronized(recentStatements) { recentStatements.clear() }
+    }
+
+    fun toJson(): String {
+        val queries = JSONArray()
+        snapshot().forEach {
+            queries.put(
+                JSONObject()
+                    .put("sql", it.sql)
+                    .put("count", it.count)
+                    .put("p50Micros", it.p50Micros)
+                    .put("p95Micros", it.p95Micros)
+                    .put("p99Micros", it.p99Micros)
+                    .put("maxMicros", it.maxMicros)
+                    .put("totalRows", it.totalRows)
+                    .put("mainThreadCount", it.mainThreadCount)
+            )
+        }
+        return JSONObject()
+            .put("queries", queries)
+            .put("recentStatements", JSONArray(recentStatements()))
+            .toString(2)
+    }
+
+    // Room expands IN (:ids) to one placeholder per element; fold those into a single key
+    private fun normalize(sql: String): String =
+        sql.trim().replace(PLACEHOLDER_LIST, "?...")
+
+    companion object {
+        private const val RECENT_LIMIT = 50
+        private val PLACEHOLDER_LIST = Regex("""\?(\s*,\s*\?)+""")
+    }
+}
+
+// Log-linear buckets: four sub-buckets per power of two, so percentiles are within ~25%
+class LatencyHistogram {
+    private val buckets = LongArray(BUCKET_COUNT)
+    private var total = 0L
+
+    fun record(micros: Long) {
+        buckets[indexFor(micros)]++
+        total++
+    }
+
+    fun percentile(fraction: Double): Long {
+        if (total == 0L) return 0
+        val target = (total * fraction).toLong().coerceAtLeast(1)
+        var seen = 0L
+        for (i in buckets.indices) {
+            seen += buckets[i]
+            if (seen >= target) return lowerBound(i)
+        }
+        return lowerBound(BUCKET_COUNT - 1)
+    }
+
+    private fun indexFor(micros: Long): Int {
+        if (micros <= 0) return 0
+        val log = 63 - java.lang.Long.numberOfLeadingZeros(micros)
+        val sub = if (log >= 2) ((micros shr (log - 2)) and 3).toInt() else 0
+        return (log * 4 + sub).coerceAtMost(BUCKET_COUNT - 1)
+    }
+
+    private fun lowerBound(index: Int): Long {
+        val log = index / 4
+        val sub = index % 4
+        return if (log < 2) 1L shl log else (4L + sub) shl (log - 2)
+    }
+
+    companion object {
+        private const val BUCKET_COUNT = 40 * 4
+    }
+}
@@ -0,0 +1,45 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.compose.runtime.Immutable
+import kotlinx.collections.immutable.ImmutableList
+import kotlinx.collections.immutable.toImmutableList
+
+// Letter-to-position map for a sortKey-ordered list with one header item per section.
+// `position` is the header's index in the list; its rows follow at position + 1.
+@Immutable
+class SectionIndex(counts: List<SectionCount>) {
+
+    data class Section(
+        val bucket: Int,
+        val label: String,
+        val firstRow: Int,
+        val count: Int,
+        val position: Int
+    )
+
+    val sections: ImmutableList<Section>
+
+    init {
+        val built = ArrayList<Section>(counts.size)
+        var row = 0
+        for (count in counts) {
+            if (count.count <= 0) continue
+            built += Section(count.section, Collation.sectionLabel(count.section), row, count.count, row + built.size)
+            row += count.count
+        }
+        sections = built.toImmutableList()
+    }
+
+    val rowCount: Int get() = sections.lastOrNull()?.let { it.firstRow + it.count } ?: 0
+
+    // Section containing a list position, for highlighting the rail while scrolling
+    fun sectionAt(position: Int): Int {
+        var low = 0
+        var high = sections.lastIndex
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (sections[mid].position <= position) low = mid else high = mid - 1
+        }
+        return low
+    }
+}
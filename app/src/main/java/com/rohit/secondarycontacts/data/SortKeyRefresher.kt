@@ -0,0 +1,100 @@
+package com.rohit.secondarycontacts.data
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import androidx.core.content.ContextCompat
+import androidx.room.withTransaction
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+
+// Rewrites every contact's sortKey, section and displayNumber when the device locale or phone
+// region no longer matches the one the stored values were built for. Writes through ContactDao
+// already use the current locale. Also owns the persisted phone region setting, since changing
+// it is one of the things that makes stored values stale.
+class SortKeyRefresher(
+    private val context: Context,
+    private val database: ContactDatabase,
+    private val scope: CoroutineScope
+) {
+    private val dao = database.contactDao()
+    private val prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+    private var job: Job? = null
+
+    private val _phoneRegion = MutableStateFlow(prefs.getString(KEY_REGION, null))
+    // Null follows the device locale's country
+    val phoneRegion: StateFlow<String?> = _phoneRegion.asStateFlow()
+
+    fun start() {
+        PhoneFormatter.regionOverride = _phoneRegion.value
+        ContextCompat.registerReceiver(
+            context,
+            object : BroadcastReceiver() {
+                override fun onReceive(context: Context, intent: Intent) {
+                    refreshIfStale()
+                }
+            },
+            IntentFilter(Intent.ACTION_LOCALE_CHANGED),
+            ContextCompat.RECEIVER_NOT_EXPORTED
+        )
+        refreshIfStale()
+    }
+
+    @Synchronized
+    fun refreshIfStale() {
+        val locale = currentTag()
+        val stored = prefs.getString(KEY_LOCALE, null)
+        // First run: keys written so far (including by migration) used this locale
+        if (stored == null) {
+            prefs.edit().putString(KEY_LOCALE, locale).apply()
+            return
+        }
+        if (stored == locale) return
+
+        job?.cancel()
+        job = scope.launch(Dispatchers.IO) {
+            var afterId = 0
+            while (true) {
+                val chunk = dao.loadContactsAfter(afterId, CHUNK_SIZE)
+                if (chunk.isEmpty()) break
+                database.withTransaction {
+                    chunk.forEach {
+                        val derived = it.withDerivedColumns()
+                        dao.updateLocaleColumns(it.id, derived.sortKey, derived.section, derived.displayNumber)
+                    }
+                }
+                afterId = chunk.last().id
+            }
+            // Only record the locale once every row has been rewritten, so an interrupted
+            // refresh is resumed on the next start
+            if (currentTag() == locale) prefs.edit().putString(KEY_LOCALE, locale).apply()
+        }
+    }
+
+    // Two-letter ISO country code, or null for the device's
+    @Synchronized
+    fun setPhoneRegion(region: String?) {
+        val normalized = region?.trim()?.uppercase()?.ifEmpty { null }
+        require(normalized == null || REGION.matches(normalized)) { "Not a region code: $region" }
+        prefs.edit().putString(KEY_REGION, normalized).apply()
+        PhoneFormatter.regionOverride = normalized
+        _phoneRegion.value = normalized
+        refreshIfStale()
+    }
+
+    private fun currentTag(): String = "${Collation.localeTag()}|${PhoneFormatter.region}"
+
+    companion object {
+        private const val PREFS = "collation"
+        private const val KEY_LOCALE = "sort_key_locale"
+        private const val KEY_REGION = "phone_region"
+        private val REGION = Regex("[A-Z]{2}")
+        private const val CHUNK_SIZE = 500
+    }
+}
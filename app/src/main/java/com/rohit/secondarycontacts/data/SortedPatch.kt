@@ -0,0 +1,25 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.mutate
+
+object SortedPatch {
+
+    // Replaces the rows of `ids` in a list sorted by `comparator` with `rows` (those that still
+    // belong), keeping at most `limit`. Edits go through a builder, so untouched parts of the
+    // list and their Contact instances are shared with `current`.
+    fun apply(
+        current: PersistentList<Contact>,
+        ids: Set<Int>,
+        rows: List<Contact>,
+        comparator: Comparator<Contact>,
+        limit: Int = Int.MAX_VALUE
+    ): PersistentList<Contact> = current.mutate { list ->
+        list.removeAll { it.id in ids }
+        for (row in rows) {
+            val at = list.binarySearch(row, comparator)
+            list.add(if (at < 0) -at - 1 else at, row)
+        }
+        while (list.size > limit) list.removeAt(list.lastIndex)
+    }
+}
@@ -0,0 +1,57 @@
+package com.rohit.secondarycontacts.data
+
+import java.util.PriorityQueue
+import kotlin.math.log2
+import kotlin.math.pow
+
+// Dialer ranking: match quality sets the tier (prefix > word start > initials > mid-word
+// substring > phone match) and time-decayed call frequency orders contacts within a tier.
+// FRECENCY_WEIGHT stays below the 1.0 gap between tiers, so a frequent contact never
+// outranks a better match.
+object SuggestionRanking {
+    private const val HALF_LIFE_MS = 14L * 24 * 60 * 60 * 1000
+    private const val FRECENCY_WEIGHT = 0.9
+
+    fun score(matchType: T9Trie.MatchType?, phoneMatch: Boolean, lastCalledAt: Long?, callCount: Int, now: Long): Double {
+        val quality = when (matchType) {
+            T9Trie.MatchType.PREFIX -> 5.0
+            T9Trie.MatchType.WORD_START -> 4.0
+            T9Trie.MatchType.INITIALS -> 3.0
+            T9Trie.MatchType.SUBSTRING -> 2.0
+            null -> if (phoneMatch) 1.0 else return 0.0
+        }
+        return quality + FRECENCY_WEIGHT * frecency(lastCalledAt, callCount, now)
+    }
+
+    // 0 for never called, approaching 1 for frequent recent calls. Only the latest call time
+    // is stored, so the whole count decays from it.
+    fun frecency(lastCalledAt: Long?, callCount: Int, now: Long): Double {
+        if (lastCalledAt == null || callCount <= 0) return 0.0
+        val age = (now - lastCalledAt).coerceAtLeast(0)
+        val decayed = callCount * 0.5.pow(age.toDouble() / HALF_LIFE_MS)
+        return decayed / (1 + decayed)
+    }
+
+    // Orders contacts the same way frecency does at any `now`: log2 of the decayed count is
+    // this minus now / HALF_LIFE_MS. Lets T9Trie keep rankings that do not go stale.
+    fun frecencyRank(lastCalledAt: Long?, callCount: Int): Double {
+        if (lastCalledAt == null || callCount <= 0) return Double.NEGATIVE_INFINITY
+        return log2(callCount.toDouble()) + lastCalledAt.toDouble() / HALF_LIFE_MS
+    }
+
+    // Highest-scoring k items, best first, using a min-heap bounded at k
+    fun <T> topK(items: Iterable<T>, k: Int, score: (T) -> Double): List<T> {
+        if (k <= 0) return emptyList()
+        val heap = PriorityQueue<Pair<T, Double>>(k, compareBy { it.second })
+        for (item in items) {
+            val s = score(item)
+            if (heap.size < k) {
+                heap.add(item to s)
+            } else if (s > heap.peek()!!.second) {
+                heap.poll()
+                heap.add(item to s)
+            }
+        }
+        return heap.sortedByDescending { it.second }.map { it.first }
+    }
+}
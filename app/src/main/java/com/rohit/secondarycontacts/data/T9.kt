@@ -0,0 +1,184 @@
+package com.rohit.secondarycontacts.data
+
+import java.text.Normalizer
+
+// Primitive lookup table instead of a Map<Char, Char>, so encoding and matching
+// never box characters. The buffer-taking variants and matchers allocate nothing; the
+// String-returning encode/initials allocate only their result.
+//
+// Accented Latin letters take the digit of their base letter ("É" is 3). Letters outside
+// Latin (Greek, Cyrillic, CJK, ...) have no key on a T9 pad and are skipped.
+object T9 {
+    private const val NO_DIGIT = '\u0000'
+
+    // Letters NFD does not decompose to an ASCII base
+    private const val EXTRA_LETTERS = "æaøoßsđdłlœoþtðdħhıi"
+
+    private val DIGITS = CharArray(0x250).also { table ->
+        listOf("abc", "def", "ghi", "jkl", "mno", "pqrs", "tuv", "wxyz").forEachIndexed { i, letters ->
+            for (c in letters) {
+                table[c.code] = '2' + i
+                table[c.uppercaseChar().code] = '2' + i
+            }
+        }
+        for (code in 0xC0 until table.size) {
+            val base = Normalizer.normalize(code.toChar().toString(), Normalizer.Form.NFD)[0]
+            if (base.code < 128) table[code] = table[base.code]
+        }
+        for (i in EXTRA_LETTERS.indices step 2) {
+            val digit = table[EXTRA_LETTERS[i + 1].code]
+            table[EXTRA_LETTERS[i].code] = digit
+            val upper = EXTRA_LETTERS[i].uppercaseChar()
+            if (upper.code < table.size && upper != EXTRA_LETTERS[i]) table[upper.code] = digit
+        }
+    }
+
+    fun digitFor(c: Char): Char = if (c.code < DIGITS.size) DIGITS[c.code] else NO_DIGIT
+
+    // Writes the T9 digits of name into out (at least name.length long) and returns the count
+    fun encode(name: String, out: CharArray): Int {
+        var n = 0
+        for (c in name) {
+            val d = digitFor(c)
+            if (d != NO_DIGIT) out[n++] = d
+        }
+        return n
+    }
+
+    // Writes the digit of each word's first keyed letter ("John Kim" -> 55)
+    fun encodeInitials(name: String, out: CharArray): Int {
+        var n = 0
+        var inWord = false
+        for (c in name) {
+            if (!c.isLetter()) {
+                inWord = false
+                continue
+            }
+            if (!inWord) {
+                inWord = true
+                val d = digitFor(c)
+                if (d != NO_DIGIT) out[n++] = d
+            }
+        }
+        return n
+    }
+
+    fun encode(name: String): String {
+        val out = CharArray(name.length)
+        return String(out, 0, encode(name, out))
+    }
+
+    fun initials(name: String): String {
+        val out = CharArray(name.length)
+        return String(out, 0, encodeInitials(name, out))
+    }
+
+    fun matchesPrefix(name: String, digits: CharSequence): Boolean = matchesFrom(name, 0, digits)
+
+    // True when the digits match the name's keys starting at some word other than the first
+    fun matchesWordStart(name: String, digits: CharSequence): Boolean {
+        var seenFirstWord = false
+        for (i in name.indices) {
+            val c = name[i]
+            if (!c.isLetter() || (i > 0 && name[i - 1].isLetter())) continue
+            if (seenFirstWord && matchesFrom(name, i, digits)) return true
+            seenFirstWord = true
+        }
+        return false
+    }
+
+    fun matchesInitials(name: String, digits: CharSequence): Boolean {
+        if (digits.isEmpty()) return false
+        var matched = 0
+        var inWord = false
+        for (c in name) {
+            if (!c.isLetter()) {
+                inWord = false
+                continue
+            }
+            if (!inWord) {
+                inWord = true
+                val d = digitFor(c)
+                if (d == NO_DIGIT) continue
+                if (d != digits[matched]) return false
+                if (++matched == digits.length) return true
+            }
+        }
+        return false
+    }
+
+    // True when the digits match the name's keys starting at any keyed letter, across word
+    // breaks ("Alexander" contains 3926)
+    fun matchesSubstring(name: String, digits: CharSequence): Boolean {
+        if (digits.isEmpty()) return false
+        val first = digits[0]
+        for (i in name.indices) {
+            if (digitFor(name[i]) == first && matchesFrom(name, i, digits)) return true
+        }
+        return false
+    }
+
+    // Characters of `name` that `digits` matched, tried in T9Trie.matchType's tier order: one
+    // span for a prefix, word-start or mid-word match, one per letter for initials. Empty when
+    // nothing matches. Uses the same key table as matching, so accented names line up.
+    fun matchedRanges(name: String, digits: CharSequence): List<IntRange> {
+        if (digits.isEmpty()) return emptyList()
+        spanFrom(name, 0, digits)?.let { return listOf(it) }
+        var seenFirstWord = false
+        for (i in name.indices) {
+            if (!name[i].isLetter() || (i > 0 && name[i - 1].isLetter())) continue
+            if (seenFirstWord) spanFrom(name, i, digits)?.let { return listOf(it) }
+            seenFirstWord = true
+        }
+        initialRanges(name, digits)?.let { return it }
+        for (i in name.indices) {
+            if (digitFor(name[i]) != NO_DIGIT) spanFrom(name, i, digits)?.let { return listOf(it) }
+        }
+        return emptyList()
+    }
+
+    private fun initialRanges(name: String, digits: CharSequence): List<IntRange>? {
+        val ranges = ArrayList<IntRange>(digits.length)
+        var inWord = false
+        for (i in name.indices) {
+            if (!name[i].isLetter()) {
+                inWord = false
+                continue
+            }
+            if (!inWord) {
+                inWord = true
+                val d = digitFor(name[i])
+                if (d == NO_DIGIT) continue
+                if (d != digits[ranges.size]) return null
+                ranges += i..i
+                if (ranges.size == digits.length) return ranges
+            }
+        }
+        return null
+    }
+
+    private fun matchesFrom(name: String, start: Int, digits: CharSequence): Boolean =
+        matchEnd(name, start, digits) >= 0
+
+    // First keyed character at or after `start` through the last one matched, or null
+    private fun spanFrom(name: String, start: Int, digits: CharSequence): IntRange? {
+        val end = matchEnd(name, start, digits)
+        if (end < 0) return null
+        var first = start
+        while (digitFor(name[first]) == NO_DIGIT) first++
+        return first..end
+    }
+
+    // Index of the character completing the match from `start`, or -1
+    private fun matchEnd(name: String, start: Int, digits: CharSequence): Int {
+        if (digits.isEmpty()) return -1
+        var matched = 0
+        for (i in start until name.length) {
+            val d = digitFor(name[i])
+            if (d == NO_DIGIT) continue
+            if (d != digits[matched]) return -1
+            if (++matched == digits.length) return i
+        }
+        return -1
+    }
+}
@@ -0,0 +1,75 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.onSubscription
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+// Keeps a T9Trie of every contact's name for the dialer. Built once in the background, then
+// patched from the change feed.
+class T9Index(
+    database: ContactDatabase,
+    private val changeFeed: ContactChangeFeed,
+    scope: CoroutineScope
+) {
+    private val dao = database.contactDao()
+    private val trie = T9Trie()
+
+    private val _ready = MutableStateFlow(false)
+    val ready: StateFlow<Boolean> = _ready.asStateFlow()
+
+    init {
+        scope.launch {
+            val pending = Channel<List<ContactChange>>(Channel.UNLIMITED)
+            val subscribed = CompletableDeferred<Unit>()
+            launch {
+                changeFeed.batches
+                    .onSubscription { subscribed.complete(Unit) }
+                    .collect { pending.send(it) }
+            }
+            subscribed.await()
+            build()
+            _ready.value = true
+            for (batch in pending) apply(batch)
+        }
+    }
+
+    // Always off the caller's thread: the trie lock is also held while a build page or a
+    // change batch is applied, and the dialer calls this from the main dispatcher
+    suspend fun search(digits: String, limit: Int, now: Long): List<T9Trie.Match> =
+        withContext(Dispatchers.Default) {
+            synchronized(trie) { trie.search(digits, limit, now) }
+        }
+
+    private suspend fun build() {
+        var afterId = 0
+        while (true) {
+            val page = dao.loadContactSummariesAfter(afterId, BUILD_PAGE_SIZE)
+            if (page.isEmpty()) break
+            synchronized(trie) { page.forEach { trie.put(it) } }
+            afterId = page.last().id
+        }
+    }
+
+    private suspend fun apply(batch: List<ContactChange>) {
+        batch.map { it.contactId }.distinct().chunked(BUILD_PAGE_SIZE).forEach { ids ->
+            val rows = dao.getContactSummariesByIds(ids).associateBy { it.id }
+            synchronized(trie) {
+                ids.forEach { id ->
+                    val row = rows[id]
+                    if (row != null) trie.put(row) else trie.remove(id)
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val BUILD_PAGE_SIZE = 500
+    }
+}
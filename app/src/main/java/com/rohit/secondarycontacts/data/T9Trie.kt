@@ -0,0 +1,305 @@
+package com.rohit.secondarycontacts.data
+
+import java.util.PriorityQueue
+
+// Digit trie over the T9 keys of every word start in a contact's name, plus its initials
+// ("John Kim" is stored under 5646546, 546 and 55). Not thread-safe; T9Index serializes access.
+//
+// Lookups cost O(digits + topK) regardless of book size: every node whose subtree holds more
+// than CACHE_THRESHOLD entries keeps its best `topK` contacts, maintained on put/remove, and
+// smaller subtrees are cheap enough to walk. Order is match tier, then frecency rank, which
+// SuggestionRanking.frecencyRank makes independent of the current time.
+//
+// Mid-word matches (the SUBSTRING tier) are not indexed, since keying every suffix would
+// multiply the trie's size. They only fill results the indexed tiers leave short, from one
+// allocation-free scan over the names, and only in books up to MAX_SCAN_ENTRIES, where the
+// scan stays in the low milliseconds.
+class T9Trie(private val topK: Int = DEFAULT_TOP_K) {
+    // Declaration order is ranking order; the ordinal is packed into the low bits of trie entries
+    enum class MatchType { PREFIX, WORD_START, INITIALS, SUBSTRING }
+
+    data class Match(val contactId: Int, val type: MatchType, val score: Double)
+
+    // Keys are derived from the name again on removal instead of being kept per contact
+    private class Entry(
+        val name: String,
+        val lastCalledAt: Long?,
+        val callCount: Int,
+        val rank: Double
+    )
+
+    // Children and entries are allocated on first use: most nodes sit on the chain of a
+    // single name and need neither, or only one of the two
+    private class Node {
+        var children: Array<Node?>? = null
+        var entries: IntArray? = null
+        var size = 0
+
+        // Entries in this subtree, and its best contacts once that gets large
+        var count = 0
+        var top: IntArray? = null
+        var topSize = 0
+
+        fun child(slot: Int): Node? = children?.get(slot)
+
+        fun childOrCreate(slot: Int): Node {
+            val slots = children ?: arrayOfNulls<Node>(8).also { children = it }
+            return slots[slot] ?: Node().also { slots[slot] = it }
+        }
+
+        fun add(entry: Int) {
+            val current = entries
+            val target = when {
+                current == null -> IntArray(1)
+                size == current.size -> current.copyOf(size * 2)
+                else -> current
+            }
+            target[size++] = entry
+            entries = target
+        }
+
+        fun remove(entry: Int) {
+            val current = entries ?: return
+            for (i in 0 until size) {
+                if (current[i] == entry) {
+                    current[i] = current[--size]
+                    if (size == 0) entries = null
+                    return
+                }
+            }
+        }
+
+        fun topIndexOf(id: Int): Int {
+            val best = top ?: return -1
+            for (i in 0 until topSize) {
+                if (best[i] ushr TYPE_BITS == id) return i
+            }
+            return -1
+        }
+    }
+
+    private val root = Node()
+    private val entries = HashMap<Int, Entry>()
+
+    // Best-first: lower tier, then higher rank, then lower id
+    private val order = Comparator<Int> { a, b ->
+        val byType = (a and TYPE_MASK) - (b and TYPE_MASK)
+        if (byType != 0) return@Comparator byType
+        val byRank = rankOf(b ushr TYPE_BITS).compareTo(rankOf(a ushr TYPE_BITS))
+        if (byRank != 0) byRank else (a ushr TYPE_BITS) - (b ushr TYPE_BITS)
+    }
+
+    val size: Int get() = entries.size
+
+    fun put(contact: ContactSummary) {
+        remove(contact.id)
+        entries[contact.id] = Entry(
+            contact.name,
+            contact.lastCalledAt,
+            contact.callCount,
+            SuggestionRanking.frecencyRank(contact.lastCalledAt, contact.callCount)
+        )
+        val paths = ArrayList<Array<Node>>(4)
+        val packed = ArrayList<Int>(4)
+        forEachKey(contact.name) { key, type ->
+            val entry = (contact.id shl TYPE_BITS) or type.ordinal
+            val path = arrayOfNulls<Node>(key.length)
+            var node = root
+            for (i in key.indices) {
+                node = node.childOrCreate(key[i] - '2')
+                node.count++
+                path[i] = node
+            }
+            node.add(entry)
+            @Suppress("UNCHECKED_CAST")
+            paths += path as Array<Node>
+            packed += entry
+        }
+        // Deepest first, so a node that needs a full recompute reads settled children
+        forEachBottomUp(paths) { node, keyIndex ->
+            when {
+                node.top != null -> offer(node, packed[keyIndex])
+                node.count > CACHE_THRESHOLD -> recompute(node)
+            }
+        }
+    }
+
+    fun remove(id: Int) {
+        val entry = entries[id] ?: return
+        val paths = ArrayList<Array<Node>>(4)
+        forEachKey(entry.name) { key, type ->
+            val path = arrayOfNulls<Node>(key.length)
+            var node = root
+            for (i in key.indices) {
+                node = node.child(key[i] - '2') ?: return@forEachKey
+                node.count--
+                path[i] = node
+            }
+            node.remove((id shl TYPE_BITS) or type.ordinal)
+            @Suppress("UNCHECKED_CAST")
+            paths += path as Array<Node>
+        }
+        forEachBottomUp(paths) { node, _ ->
+            when {
+                node.top == null -> Unit
+                node.count <= CACHE_THRESHOLD / 2 -> {
+                    node.top = null
+                    node.topSize = 0
+                }
+                node.topIndexOf(id) >= 0 -> recompute(node)
+            }
+        }
+        entries.remove(id)
+    }
+
+    // Best `limit` matches, best first. Served from the node's cached top when it has one and
+    // `limit` fits in it; otherwise the subtree is small, or `limit` is unusually large, and is walked.
+    fun search(digits: String, limit: Int, now: Long): List<Match> {
+        if (digits.isEmpty() || limit <= 0 || digits.any { it !in '2'..'9' }) return emptyList()
+        val indexed = searchIndexed(digits, limit)
+        // Short of `limit`, every indexed match is already in `indexed`
+        val ranked = if (indexed.size < limit && entries.size <= MAX_SCAN_ENTRIES) {
+            indexed + substringMatches(digits, limit - indexed.size, indexed)
+        } else {
+            indexed
+        }
+        return ranked.map { packed ->
+            val id = packed ushr TYPE_BITS
+            val type = MATCH_TYPES[packed and TYPE_MASK]
+            val entry = entries[id]
+            Match(id, type, SuggestionRanking.score(type, false, entry?.lastCalledAt, entry?.callCount ?: 0, now))
+        }
+    }
+
+    private fun searchIndexed(digits: String, limit: Int): List<Int> {
+        var node = root
+        for (d in digits) node = node.child(d - '2') ?: return emptyList()
+        val best = node.top
+        return if (best != null && limit <= topK) {
+            List(minOf(limit, node.topSize)) { best[it] }
+        } else {
+            collectBest(node, limit)
+        }
+    }
+
+    // Best `limit` contacts matching mid-word, other than `found`; a bounded heap keeps the
+    // scan's allocation at O(limit)
+    private fun substringMatches(digits: String, limit: Int, found: List<Int>): List<Int> {
+        val skip = found.mapTo(HashSet()) { it ushr TYPE_BITS }
+        val worstFirst = PriorityQueue<Int>(limit, order.reversed())
+        for ((id, entry) in entries) {
+            if (id in skip || !T9.matchesSubstring(entry.name, digits)) continue
+            val packed = (id shl TYPE_BITS) or MatchType.SUBSTRING.ordinal
+            if (worstFirst.size < limit) {
+                worstFirst.add(packed)
+            } else if (order.compare(packed, worstFirst.peek()!!) < 0) {
+                worstFirst.poll()
+                worstFirst.add(packed)
+            }
+        }
+        return worstFirst.sortedWith(order)
+    }
+
+    private fun rankOf(id: Int): Double = entries[id]?.rank ?: Double.NEGATIVE_INFINITY
+
+    // Inserts one entry into a cached top, keeping one entry per contact
+    private fun offer(node: Node, packed: Int) {
+        val top = node.top!!
+        val existing = node.topIndexOf(packed ushr TYPE_BITS)
+        if (existing >= 0) {
+            if (order.compare(packed, top[existing]) >= 0) return
+            System.arraycopy(top, existing + 1, top, existing, node.topSize - existing - 1)
+            node.topSize--
+        }
+        if (node.topSize == topK && order.compare(packed, top[topK - 1]) >= 0) return
+        var at = node.topSize.coerceAtMost(topK - 1)
+        while (at > 0 && order.compare(packed, top[at - 1]) < 0) {
+            top[at] = top[at - 1]
+            at--
+        }
+        top[at] = packed
+        if (node.topSize < topK) node.topSize++
+    }
+
+    // Rebuilds a node's top from its own entries plus each child's top, or the whole child
+    // subtree where the child is small enough to have none
+    private fun recompute(node: Node) {
+        val candidates = HashMap<Int, Int>()
+        fun consider(packed: Int) {
+            val id = packed ushr TYPE_BITS
+            val current = candidates[id]
+            if (current == null || order.compare(packed, current) < 0) candidates[id] = packed
+        }
+        val own = node.entries
+        for (i in 0 until node.size) consider(own!![i])
+        node.children?.forEach { child ->
+            if (child == null) return@forEach
+            val childTop = child.top
+            if (childTop != null) {
+                for (i in 0 until child.topSize) consider(childTop[i])
+            } else {
+                walk(child) { consider(it) }
+            }
+        }
+        val sorted = candidates.values.sortedWith(order)
+        val top = node.top ?: IntArray(topK).also { node.top = it }
+        node.topSize = minOf(topK, sorted.size)
+        for (i in 0 until node.topSize) top[i] = sorted[i]
+    }
+
+    private fun collectBest(node: Node, limit: Int): List<Int> {
+        val best = HashMap<Int, Int>()
+        walk(node) { packed ->
+            val id = packed ushr TYPE_BITS
+            val current = best[id]
+            if (current == null || order.compare(packed, current) < 0) best[id] = packed
+        }
+        return best.values.sortedWith(order).take(limit)
+    }
+
+    private fun walk(node: Node, action: (Int) -> Unit) {
+        val packed = node.entries
+        for (i in 0 until node.size) action(packed!![i])
+        node.children?.forEach { child ->
+            if (child != null) walk(child, action)
+        }
+    }
+
+    companion object {
+        private const val DEFAULT_TOP_K = 16
+        private const val CACHE_THRESHOLD = 256
+        private const val MAX_SCAN_ENTRIES = 100_000
+        private const val TYPE_BITS = 2
+        private const val TYPE_MASK = 3
+        private val MATCH_TYPES = MatchType.values()
+        private val WORD_SEPARATOR = Regex("[^\\p{L}]+")
+
+        // The first word-start key covers the whole name; each later one starts at the next word
+        private inline fun forEachKey(name: String, action: (String, MatchType) -> Unit) {
+            val words = name.split(WORD_SEPARATOR).map { T9.encode(it) }.filter { it.isNotEmpty() }
+            for (i in words.indices) {
+                val key = words.subList(i, words.size).joinToString("")
+                action(key, if (i == 0) MatchType.PREFIX else MatchType.WORD_START)
+            }
+            if (words.size >= 2) action(T9.initials(name), MatchType.INITIALS)
+        }
+
+        // Visits nodes of all paths from the deepest level up, with the index of their path
+        private inline fun forEachBottomUp(paths: List<Array<Node>>, action: (Node, Int) -> Unit) {
+            val depth = paths.maxOfOrNull { it.size } ?: return
+            for (level in depth - 1 downTo 0) {
+                for (p in paths.indices) {
+                    if (level < paths[p].size) action(paths[p][level], p)
+                }
+            }
+        }
+
+        fun matchType(name: String, digits: String): MatchType? = when {
+            T9.matchesPrefix(name, digits) -> MatchType.PREFIX
+            T9.matchesWordStart(name, digits) -> MatchType.WORD_START
+            T9.matchesInitials(name, digits) -> MatchType.INITIALS
+            T9.matchesSubstring(name, digits) -> MatchType.SUBSTRING
+            else -> null
+        }
+    }
+}
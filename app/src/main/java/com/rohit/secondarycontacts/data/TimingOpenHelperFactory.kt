@@ -0,0 +1,117 @@
+package com.rohit.secondarycontacts.data
+
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.os.CancellationSignal
+import android.os.Looper
+import android.os.SystemClock
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.SupportSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteStatement
+
+// Wraps the open helper so every cursor and compiled statement reports its latency,
+// row count and calling thread to QueryMetrics.
+class TimingOpenHelperFactory(
+    private val delegate: SupportSQLiteOpenHelper.Factory,
+    private val metrics: QueryMetrics
+) : SupportSQLiteOpenHelper.Factory {
+
+    override fun create(configuration: SupportSQLiteOpenHelper.Configuration): SupportSQLiteOpenHelper =
+        TimingOpenHelper(delegate.create(configuration), metrics)
+
+    private class TimingOpenHelper(
+        private val delegate: SupportSQLiteOpenHelper,
+        private val metrics: QueryMetrics
+    ) : SupportSQLiteOpenHelper by delegate {
+        @Volatile
+        private var wrapped: TimingDatabase? = null
+
+        override val writableDatabase: SupportSQLiteDatabase
+            get() = wrap(delegate.writableDatabase)
+
+        override val readableDatabase: SupportSQLiteDatabase
+            get() = wrap(delegate.readableDatabase)
+
+        private fun wrap(db: SupportSQLiteDatabase): SupportSQLiteDatabase {
+            wrapped?.takeIf { it.delegate === db }?.let { return it }
+            return TimingDatabase(db, metrics).also { wrapped = it }
+        }
+    }
+
+    private class TimingDatabase(
+        val delegate: SupportSQLiteDatabase,
+        private val metrics: QueryMetrics
+    ) : SupportSQLiteDatabase by delegate {
+
+        override fun query(query: String): Cursor =
+            timed(query) { delegate.query(query) }
+
+        override fun query(query: String, bindArgs: Array<out Any?>): Cursor =
+            timed(query) { delegate.query(query, bindArgs) }
+
+        override fun query(query: SupportSQLiteQuery): Cursor =
+            timed(query.sql) { delegate.query(query) }
+
+        override fun query(query: SupportSQLiteQuery, cancellationSignal: CancellationSignal?): Cursor =
+            timed(query.sql) { delegate.query(query, cancellationSignal) }
+
+        override fun compileStatement(sql: String): SupportSQLiteStatement =
+            TimingStatement(delegate.compileStatement(sql), sql, metrics)
+
+        private inline fun timed(sql: String, open: () -> Cursor): Cursor {
+            val start = SystemClock.elapsedRealtimeNanos()
+            return TimingCursor(open(), sql, start, isMainThread(), metrics)
+        }
+    }
+
+    // Latency runs from query start until the caller closes the cursor, covering the row reads
+    private class TimingCursor(
+        cursor: Cursor,
+        private val sql: String,
+        private val startNanos: Long,
+        private val onMainThread: Boolean,
+        private val metrics: QueryMetrics
+    ) : CursorWrapper(cursor) {
+        override fun close() {
+            if (!isClosed) {
+                val rows = count
+                metrics.record(sql, elapsedMicros(startNanos), rows, onMainThread)
+            }
+            super.close()
+        }
+    }
+
+    private class TimingStatement(
+        private val delegate: SupportSQLiteStatement,
+        private val sql: String,
+        private val metrics: QueryMetrics
+    ) : SupportSQLiteStatement by delegate {
+
+        override fun execute() = timed { delegate.execute() }
+
+        override fun executeUpdateDelete(): Int = timed { delegate.executeUpdateDelete() }
+
+        override fun executeInsert(): Long = timed { delegate.executeInsert() }
+
+        override fun simpleQueryForLong(): Long = timed { delegate.simpleQueryForLong() }
+
+        override fun simpleQueryForString(): String? = timed { delegate.simpleQueryForString() }
+
+        private inline fun <T> timed(block: () -> T): T {
+            val start = SystemClock.elapsedRealtimeNanos()
+            try {
+                return block()
+            } finally {
+                metrics.record(sql, elapsedMicros(start), 0, isMainThread())
+            }
+        }
+    }
+
+    companion object {
+        private fun isMainThread() = Looper.getMainLooper().isCurrentThread
+
+        private fun elapsedMicros(startNanos: Long) =
+            (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000
+    }
+}
@@ -0,0 +1,139 @@
+package com.rohit.secondarycontacts.data
+
+data class ContactName(
+    val id: Int,
+    val name: String,
+    val group: String
+)
+
+// Trigram postings of every contact name, so FuzzySearch counts shared trigrams in memory.
+// Grouping the posting lists in SQL cost ~10 ms for a short query at 100k contacts, since
+// trigrams like "  j" or "on " each sit in thousands of names. Not thread-safe; FuzzySearch
+// serializes access.
+//
+// Postings hold slots rather than contact ids. A renamed or removed contact only clears its
+// slot: search skips the stale postings, and they are dropped in one rebuild once they
+// outnumber the live ones, so deleting much of the book never edits posting lists id by id.
+class TrigramIndex {
+    data class Hit(val contactId: Int, val name: String, val shared: Int)
+
+    private class Postings {
+        var slots = IntArray(4)
+        var size = 0
+
+        fun add(slot: Int) {
+            if (size == slots.size) slots = slots.copyOf(size * 2)
+            slots[size++] = slot
+        }
+    }
+
+    private val postings = HashMap<String, Postings>()
+    private val slotById = HashMap<Int, Int>()
+    private var slots = arrayOfNulls<ContactName>(MIN_SLOTS)
+    private var slotCount = 0
+
+    // Search scratch space, reused so a query allocates only its results
+    private var counts = IntArray(MIN_SLOTS)
+    private var touched = IntArray(MIN_SLOTS)
+
+    val size: Int get() = slotById.size
+
+    fun put(contact: ContactName) {
+        val current = slotById[contact.id]
+        if (current != null) {
+            // Calls and favorites leave the name alone and keep their postings
+            if (slots[current]!!.name == contact.name) {
+                slots[current] = contact
+                return
+            }
+            slots[current] = null
+        }
+        add(contact)
+        compactIfSparse()
+    }
+
+    fun remove(id: Int) {
+        val slot = slotById.remove(id) ?: return
+        slots[slot] = null
+        compactIfSparse()
+    }
+
+    // Up to `limit` contacts sharing at least minShared of `grams`, those sharing the most first
+    // in line; ties at the cut-off go to the earlier slot
+    fun candidates(grams: Set<String>, minShared: Int, group: String?, limit: Int): List<Hit> {
+        if (counts.size < slotCount) {
+            counts = IntArray(slots.size)
+            touched = IntArray(slots.size)
+        }
+        var touchedSize = 0
+        for (gram in grams) {
+            val list = postings[gram] ?: continue
+            for (i in 0 until list.size) {
+                val slot = list.slots[i]
+                if (counts[slot]++ == 0) touched[touchedSize++] = slot
+            }
+        }
+
+        // A count is at most grams.size, so the cut-off comes from a histogram instead of a sort
+        val histogram = IntArray(grams.size + 1)
+        for (i in 0 until touchedSize) {
+            val slot = touched[i]
+            if (qualifies(slot, minShared, group)) histogram[counts[slot]]++
+        }
+        var cutoff = minShared
+        var qualifying = 0
+        for (shared in grams.size downTo minShared) {
+            qualifying += histogram[shared]
+            if (qualifying >= limit) {
+                cutoff = shared
+                break
+            }
+        }
+
+        val hits = ArrayList<Hit>(minOf(qualifying, limit))
+        for (i in 0 until touchedSize) {
+            val slot = touched[i]
+            if (counts[slot] > cutoff && qualifies(slot, minShared, group)) hits += hit(slot)
+        }
+        for (i in 0 until touchedSize) {
+            if (hits.size == limit) break
+            val slot = touched[i]
+            if (counts[slot] == cutoff && qualifies(slot, minShared, group)) hits += hit(slot)
+        }
+        for (i in 0 until touchedSize) counts[touched[i]] = 0
+        return hits
+    }
+
+    private fun qualifies(slot: Int, minShared: Int, group: String?): Boolean {
+        val contact = slots[slot] ?: return false
+        return counts[slot] >= minShared && (group == null || contact.group == group)
+    }
+
+    private fun hit(slot: Int): Hit {
+        val contact = slots[slot]!!
+        return Hit(contact.id, contact.name, counts[slot])
+    }
+
+    private fun add(contact: ContactName) {
+        if (slotCount == slots.size) slots = slots.copyOf(slotCount * 2)
+        val slot = slotCount++
+        slots[slot] = contact
+        slotById[contact.id] = slot
+        for (gram in Trigrams.of(contact.name)) postings.getOrPut(gram) { Postings() }.add(slot)
+    }
+
+    private fun compactIfSparse() {
+        if (slotCount - slotById.size <= maxOf(slotById.size, MIN_SLOTS)) return
+        val live = ArrayList<ContactName>(slotById.size)
+        for (i in 0 until slotCount) slots[i]?.let { live += it }
+        postings.clear()
+        slotById.clear()
+        slots = arrayOfNulls(maxOf(live.size * 2, MIN_SLOTS))
+        slotCount = 0
+        live.forEach { add(it) }
+    }
+
+    companion object {
+        private const val MIN_SLOTS = 64
+    }
+}
@@ -0,0 +1,39 @@
+package com.rohit.secondarycontacts.data
+
+object Trigrams {
+    private val WORD_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+
+    // Each lowercased word padded as "  word " so short words and word starts still yield trigrams
+    fun of(text: String): Set<String> {
+        val grams = LinkedHashSet<String>()
+        for (word in text.lowercase().split(WORD_SEPARATOR)) {
+            if (word.isEmpty()) continue
+            val padded = "  $word "
+            for (i in 0..padded.length - 3) grams += padded.substring(i, i + 3)
+        }
+        return grams
+    }
+
+    fun rows(contactId: Int, name: String): List<ContactTrigram> =
+        of(name).map { ContactTrigram(it, contactId) }
+
+    // Fewest edits turning query into any substring of target, so partial names aren't penalised
+    // for the characters they haven't typed yet
+    fun substringEditDistance(query: String, target: String): Int {
+        val q = query.lowercase()
+        val t = target.lowercase()
+        var previous = IntArray(t.length + 1)
+        var current = IntArray(t.length + 1)
+        for (i in 1..q.length) {
+            current[0] = i
+            for (j in 1..t.length) {
+                val cost = if (q[i - 1] == t[j - 1]) 0 else 1
+                current[j] = minOf(previous[j - 1] + cost, previous[j] + 1, current[j - 1] + 1)
+            }
+            val swap = previous
+            previous = current
+            current = swap
+        }
+        return if (q.isEmpty()) 0 else previous.min()
+    }
+}
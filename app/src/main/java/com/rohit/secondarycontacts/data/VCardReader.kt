@@ -0,0 +1,408 @@
+package com.rohit.secondarycontacts.data
+
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.OutputStream
+import java.io.Reader
+import java.nio.charset.Charset
+import java.util.UUID
+
+data class VCardPhone(
+    val number: String,
+    val type: String,
+    val preferred: Boolean
+)
+
+data class VCard(
+    val name: String,
+    val phones: List<VCardPhone>,
+    val category: String,
+    val photoFile: File?
+)
+
+// Streaming vCard 2.1/3.0/4.0 tokenizer. Folded lines are joined as they are read and
+// property values are consumed a character at a time: text values are capped, unknown
+// properties are skipped without buffering, and base64 PHOTO data is decoded straight into a
+// file under `photoDir` (skipped when null), so memory stays constant whatever the card size.
+class VCardReader(private val reader: Reader, private val photoDir: File?) {
+    private val buffer = CharArray(BUFFER_SIZE)
+    private var position = 0
+    private var limit = 0
+
+    private val head = StringBuilder()
+    private val value = StringBuilder()
+
+    private var name = ""
+    private var structuredName = ""
+    private val phones = ArrayList<VCardPhone>()
+    private var category = ""
+    private var photoFile: File? = null
+    private var inCard = false
+    private var valueEnded = false
+
+    // Next complete card, or null at end of input. Cards without END:VCARD are dropped.
+    fun next(): VCard? {
+        while (true) {
+            if (!readHead()) {
+                if (peekRaw() == EOF) {
+                    discardCard()
+                    return null
+                }
+                continue
+            }
+            val property = Property.parse(head)
+            when (property.name) {
+                "BEGIN" -> {
+                    discardCard()
+                    readText(property)
+                    inCard = true
+                }
+                "END" -> {
+                    readText(property)
+                    if (inCard) return finishCard()
+                }
+                "FN" -> name = readText(property).trim()
+                "N" -> structuredName = structuredName(readText(property))
+                "TEL" -> {
+                    val number = readText(property).trim().removePrefix("tel:")
+                    if (number.isNotEmpty()) phones += VCardPhone(number, property.phoneType(), property.isPreferred())
+                }
+                // Split before unescaping so "Work\, London" stays one category
+                "CATEGORIES" -> category = unescape(splitUnescaped(readText(property, escaped = true), ',').first()).trim()
+                "PHOTO" -> readPhoto(property)
+                else -> skipValue()
+            }
+        }
+    }
+
+    private fun finishCard(): VCard {
+        val card = VCard(name.ifEmpty { structuredName }, phones.toList(), category, photoFile)
+        photoFile = null
+        resetCard()
+        return card
+    }
+
+    private fun discardCard() {
+        photoFile?.delete()
+        photoFile = null
+        resetCard()
+    }
+
+    private fun resetCard() {
+        name = ""
+        structuredName = ""
+        phones.clear()
+        category = ""
+        inCard = false
+    }
+
+    // Reads "group.NAME;PARAM=x:" into `head`. False for blank or colon-less lines, which are
+    // consumed entirely.
+    private fun readHead(): Boolean {
+        head.setLength(0)
+        var quoted = false
+        while (true) {
+            val c = read()
+            when {
+                c == EOF || c == LINE_END -> return false
+                c == '"'.code -> quoted = !quoted
+                c == ':'.code && !quoted -> return true
+                head.length < MAX_HEAD_LENGTH -> head.append(c.toChar())
+            }
+        }
+    }
+
+    // With `escaped`, backslash escapes are left for the caller to split on
+    private fun readText(property: Property, escaped: Boolean = false): String {
+        value.setLength(0)
+        val quotedPrintable = property.isQuotedPrintable()
+        while (true) {
+            val c = read()
+            if (c == EOF) break
+            if (c == LINE_END) {
+                // Quoted-printable soft line break: '=' at the end of a physical line
+                if (quotedPrintable && value.endsWith("=")) {
+                    value.setLength(value.length - 1)
+                    continue
+                }
+                break
+            }
+            if (value.length < MAX_VALUE_LENGTH) value.append(c.toChar())
+        }
+        return if (quotedPrintable) decodeQuotedPrintable(value, property.charset())
+               else if (escaped) value.toString()
+               else unescape(value)
+    }
+
+    private fun skipValue() {
+        while (true) {
+            val c = read()
+            if (c == EOF || c == LINE_END) return
+        }
+    }
+
+    private fun readPhoto(property: Property) {
+        val dir = photoDir
+        if (dir == null) {
+            skipValue()
+            return
+        }
+        if (!property.isBase64() && !startsDataUri()) {
+            if (!valueEnded) skipValue()
+            return
+        }
+        dir.mkdirs()
+        val id = UUID.randomUUID()
+        val file = File(dir, "$id.tmp")
+        val sink = Base64Sink(BufferedOutputStream(FileOutputStream(file)))
+        sink.use {
+            while (true) {
+                val c = read()
+                if (c == EOF || c == LINE_END) break
+                sink.put(c.toChar())
+            }
+            sink.finish()
+        }
+        // Named after what the bytes are, not what the card claims; anything that is not an
+        // image we can show is dropped
+        val extension = imageExtension(sink.header)
+        val named = File(dir, "$id.$extension")
+        if (sink.written == 0L || sink.written > MAX_PHOTO_BYTES || extension == null || !file.renameTo(named)) {
+            file.delete()
+        } else {
+            photoFile?.delete()
+            photoFile = named
+        }
+    }
+
+    // vCard 4.0 embeds photos as "data:image/jpeg;base64,…"; consumes the prefix when present.
+    // Sets valueEnded if the line ran out first.
+    private fun startsDataUri(): Boolean {
+        value.setLength(0)
+        valueEnded = false
+        while (value.length < MAX_DATA_URI_PREFIX) {
+            val c = read()
+            if (c == EOF || c == LINE_END) {
+                valueEnded = true
+                return false
+            }
+            if (c == ','.code) {
+                return value.startsWith("data:", ignoreCase = true) && value.contains(";base64", ignoreCase = true)
+            }
+            value.append(c.toChar())
+        }
+        return false
+    }
+
+    // --- Unfolding character source ---
+
+    // Next character of the current logical line, LINE_END at its end, or EOF. A line break
+    // followed by a space or tab is a fold and is skipped together with that one blank.
+    private fun read(): Int {
+        val c = readRaw()
+        if (c != '\r'.code && c != '\n'.code) return c
+        if (c == '\r'.code && peekRaw() == '\n'.code) readRaw()
+        val next = peekRaw()
+        if (next == ' '.code || next == '\t'.code) {
+            readRaw()
+            return read()
+        }
+        return LINE_END
+    }
+
+    private fun readRaw(): Int {
+        if (position == limit && !fill()) return EOF
+        return buffer[position++].code
+    }
+
+    private fun peekRaw(): Int {
+        if (position == limit && !fill()) return EOF
+        return buffer[position].code
+    }
+
+    private fun fill(): Boolean {
+        val read = reader.read(buffer, 0, buffer.size)
+        if (read <= 0) return false
+        position = 0
+        limit = read
+        return true
+    }
+
+    private class Property(val name: String, val params: List<Pair<String, String>>) {
+
+        fun param(key: String): String? = params.firstOrNull { it.first == key }?.second
+
+        // vCard 2.1 allows bare parameter values ("TEL;CELL;PREF:")
+        fun types(): List<String> = params
+            .filter { it.first == "TYPE" || it.first.isEmpty() }
+            .flatMap { it.second.split(',') }
+            .map { it.trim().lowercase() }
+
+        fun phoneType(): String =
+            types().firstOrNull { it != "pref" && it != "voice" && it.isNotEmpty() }.orEmpty()
+
+        fun isPreferred(): Boolean = "pref" in types() || param("PREF") != null
+
+        fun isQuotedPrintable(): Boolean =
+            param("ENCODING").equals("QUOTED-PRINTABLE", ignoreCase = true) ||
+                params.any { it.first.isEmpty() && it.second.equals("QUOTED-PRINTABLE", ignoreCase = true) }
+
+        fun isBase64(): Boolean {
+            val encoding = param("ENCODING") ?: params.firstOrNull { it.first.isEmpty() && it.second.equals("BASE64", ignoreCase = true) }?.second
+            return encoding.equals("b", ignoreCase = true) || encoding.equals("BASE64", ignoreCase = true)
+        }
+
+        fun charset(): Charset = param("CHARSET")
+            ?.let { runCatching { Charset.forName(it) }.getOrNull() }
+            ?: Charsets.UTF_8
+
+        companion object {
+            fun parse(head: CharSequence): Property {
+                val parts = splitUnescaped(head, ';')
+                val name = parts.first().substringAfterLast('.').trim().uppercase()
+                val params = parts.drop(1).map { part ->
+                    val eq = part.indexOf('=')
+                    if (eq < 0) "" to part.trim()
+                    else part.substring(0, eq).trim().uppercase() to part.substring(eq + 1).trim().trim('"')
+                }
+                return Property(name, params)
+            }
+        }
+    }
+
+    private class Base64Sink(private val out: OutputStream) : Closeable {
+        private var bits = 0
+        private var count = 0
+        val header = ByteArray(HEADER_BYTES)
+        var written = 0L
+            private set
+
+        fun put(c: Char) {
+            val v = when (c) {
+                in 'A'..'Z' -> c - 'A'
+                in 'a'..'z' -> c - 'a' + 26
+                in '0'..'9' -> c - '0' + 52
+                '+', '-' -> 62
+                '/', '_' -> 63
+                else -> return
+            }
+            if (written > MAX_PHOTO_BYTES) return
+            bits = (bits shl 6) or v
+            if (++count == 4) {
+                write(bits shr 16)
+                write(bits shr 8)
+                write(bits)
+                bits = 0
+                count = 0
+            }
+        }
+
+        fun finish() {
+            when (count) {
+                2 -> write(bits shr 4)
+                3 -> { write(bits shr 10); write(bits shr 2) }
+            }
+        }
+
+        override fun close() = out.close()
+
+        private fun write(b: Int) {
+            if (written < HEADER_BYTES) header[written.toInt()] = b.toByte()
+            out.write(b)
+            written++
+        }
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 16 * 1024
+        private const val EOF = -1
+        private const val LINE_END = -2
+        private const val MAX_HEAD_LENGTH = 1024
+        private const val MAX_VALUE_LENGTH = 4096
+        private const val MAX_DATA_URI_PREFIX = 128
+        private const val MAX_PHOTO_BYTES = 5L * 1024 * 1024
+        private const val HEADER_BYTES = 12
+
+        // "Family;Given;Middle;Prefix;Suffix" -> "Prefix Given Middle Family Suffix"
+        private fun structuredName(value: String): String {
+            val parts = splitUnescaped(value, ';').map { it.trim() }
+            val ordered = listOf(3, 1, 2, 0, 4).mapNotNull { parts.getOrNull(it) }
+            return ordered.filter { it.isNotEmpty() }.joinToString(" ")
+        }
+
+        private fun splitUnescaped(value: CharSequence, separator: Char): List<String> {
+            val parts = ArrayList<String>()
+            var start = 0
+            var i = 0
+            while (i < value.length) {
+                when (value[i]) {
+                    '\\' -> i++
+                    separator -> {
+                        parts += value.substring(start, i)
+                        start = i + 1
+                    }
+                }
+                i++
+            }
+            parts += value.substring(start.coerceAtMost(value.length))
+            return parts
+        }
+
+        private fun unescape(value: CharSequence): String {
+            if (value.indexOf('\\') < 0) return value.toString()
+            val out = StringBuilder(value.length)
+            var i = 0
+            while (i < value.length) {
+                val c = value[i]
+                if (c == '\\' && i + 1 < value.length) {
+                    val next = value[++i]
+                    out.append(if (next == 'n' || next == 'N') '\n' else next)
+                } else {
+                    out.append(c)
+                }
+                i++
+            }
+            return out.toString()
+        }
+
+        // Escapes are bytes in `charset`; characters written raw (some exporters leave non-ASCII
+        // text unescaped) are encoded back into that charset so both decode together
+        private fun decodeQuotedPrintable(value: CharSequence, charset: Charset): String {
+            val bytes = ByteArrayOutputStream(value.length)
+            var i = 0
+            while (i < value.length) {
+                if (value[i] == '=' && i + 2 < value.length) {
+                    val hex = value.substring(i + 1, i + 3).toIntOrNull(16)
+                    if (hex != null) {
+                        bytes.write(hex)
+                        i += 3
+                        continue
+                    }
+                }
+                var end = i + 1
+                while (end < value.length && value[end] != '=') end++
+                bytes.write(value.substring(i, end).toByteArray(charset))
+                i = end
+            }
+            return String(bytes.toByteArray(), charset)
+        }
+
+        // File extension for the image formats Android decodes, from their magic bytes
+        private fun imageExtension(header: ByteArray): String? {
+            fun at(offset: Int, vararg bytes: Int) =
+                bytes.indices.all { header[offset + it] == bytes[it].toByte() }
+            fun ascii(offset: Int, text: String) = at(offset, *text.map { it.code }.toIntArray())
+            return when {
+                at(0, 0xFF, 0xD8, 0xFF) -> "jpg"
+                at(0, 0x89, 0x50, 0x4E, 0x47) -> "png"
+                ascii(0, "GIF8") -> "gif"
+                ascii(0, "RIFF") && ascii(8, "WEBP") -> "webp"
+                ascii(4, "ftyp") && (ascii(8, "heic") || ascii(8, "heix") || ascii(8, "mif1")) -> "heic"
+                else -> null
+            }
+        }
+    }
+}
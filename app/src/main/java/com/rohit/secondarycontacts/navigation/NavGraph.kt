@@ -1,20 +1,26 @@
 package com.rohit.secondarycontacts.navigation
 
 import androidx.compose.runtime.Composable
+import androidx.compose.ui.platform.LocalContext
 import androidx.navigation.NavHostController
 import androidx.navigation.NavType
 import androidx.navigation.compose.NavHost
 import androidx.navigation.compose.composable
 import androidx.navigation.navArgument
+import com.rohit.secondarycontacts.SecondaryContactsApp
 import com.rohit.secondarycontacts.ui.screens.AddContactScreen
+import com.rohit.secondarycontacts.ui.screens.DuplicatesScreen
 import com.rohit.secondarycontacts.ui.screens.EditContactScreen
 import com.rohit.secondarycontacts.ui.screens.HomeScreen
+import com.rohit.secondarycontacts.ui.screens.QueryStatsScreen
 import com.rohit.secondarycontacts.viewmodel.ContactViewModel
 
 object Routes {
     const val HOME = "home"
     const val ADD_CONTACT = "add_contact"
     const val EDIT_CONTACT = "edit_contact/{contactId}"
+    const val QUERY_STATS = "query_stats"
+    const val DUPLICATES = "duplicates"
 
     fun editContact(contactId: Int) = "edit_contact/$contactId"
 }
@@ -24,12 +30,21 @@ fun NavGraph(
     navController: NavHostController,
     viewModel: ContactViewModel
 ) {
+    // Query timing is only collected in debug builds
+    val metrics = (LocalContext.current.applicationContext as SecondaryContactsApp).queryMetrics
+
     NavHost(navController = navController, startDestination = Routes.HOME) {
         composable(Routes.HOME) {
             HomeScreen(
                 viewModel = viewModel,
                 onAddContact = { navController.navigate(Routes.ADD_CONTACT) },
-                onEditContact = { id -> navController.navigate(Routes.editContact(id)) }
+                onEditContact = { id -> navController.navigate(Routes.editContact(id)) },
+                onOpenQueryStats = if (metrics != null) {
+                    { navController.navigate(Routes.QUERY_STATS) }
+                } else {
+                    null
+                },
+                onOpenDuplicates = { navController.navigate(Routes.DUPLICATES) }
             )
         }
 
@@ -51,5 +66,21 @@ fun NavGraph(
                 onNavigateBack = { navController.popBackStack() }
             )
         }
+
+        if (metrics != null) {
+            composable(Routes.QUERY_STATS) {
+                QueryStatsScreen(
+                    metrics = metrics,
+                    onNavigateBack = { navController.popBackStack() }
+                )
+            }
+        }
+
+        composable(Routes.DUPLICATES) {
+            DuplicatesScreen(
+                viewModel = viewModel,
+                onNavigateBack = { navController.popBackStack() }
+            )
+        }
     }
 }
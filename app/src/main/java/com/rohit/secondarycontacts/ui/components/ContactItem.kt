@@ -12,6 +12,7 @@ import androidx.compose.foundation.layout.Row
 import androidx.compose.foundation.layout.Spacer
 import androidx.compose.foundation.layout.fillMaxSize
 import androidx.compose.foundation.layout.fillMaxWidth
+import androidx.compose.foundation.layout.height
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.layout.size
 import androidx.compose.foundation.layout.width
@@ -190,7 +191,7 @@ fun ContactItem(
                             overflow = TextOverflow.Ellipsis
                         )
                         Text(
-                            text = contact.phoneNumber,
+                            text = contact.displayNumber.ifEmpty { contact.phoneNumber },
                             fontSize = 14.sp,
                             color = MaterialTheme.colorScheme.onSurfaceVariant
                         )
@@ -259,3 +260,15 @@ fun ContactItem(
         }
     )
 }
+
+// Fixed-height stand-in for rows a paged list has not loaded yet
+@Composable
+fun ContactItemPlaceholder() {
+    Card(
+        modifier = Modifier
+            .fillMaxWidth()
+            .padding(horizontal = 16.dp, vertical = 4.dp)
+            .height(72.dp),
+        elevation = CardDefaults.cardElevation(defaultElevation = 2.dp)
+    ) {}
+}
@@ -5,6 +5,7 @@ import androidx.activity.result.contract.ActivityResultContracts
 import androidx.compose.animation.AnimatedVisibility
 import androidx.compose.animation.fadeIn
 import androidx.compose.animation.fadeOut
+import androidx.compose.foundation.ExperimentalFoundationApi
 import androidx.compose.foundation.layout.Arrangement
 import androidx.compose.foundation.layout.Box
 import androidx.compose.foundation.layout.Column
@@ -18,6 +19,7 @@ import androidx.compose.foundation.layout.size
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.LazyRow
 import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.lazy.rememberLazyListState
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.Add
 import androidx.compose.material.icons.filled.Close
@@ -25,6 +27,7 @@ import androidx.compose.material.icons.filled.MoreVert
 import androidx.compose.material.icons.filled.PersonAdd
 import androidx.compose.material.icons.filled.Search
 import androidx.compose.material.icons.filled.SearchOff
+import androidx.compose.material3.AlertDialog
 import androidx.compose.material3.DockedSearchBar
 import androidx.compose.material3.DropdownMenu
 import androidx.compose.material3.DropdownMenuItem
@@ -33,14 +36,19 @@ import androidx.compose.material3.FilterChip
 import androidx.compose.material3.FloatingActionButton
 import androidx.compose.material3.Icon
 import androidx.compose.material3.IconButton
+import androidx.compose.material3.LinearProgressIndicator
 import androidx.compose.material3.MaterialTheme
 import androidx.compose.material3.OutlinedButton
+import androidx.compose.material3.OutlinedTextField
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.SnackbarHost
 import androidx.compose.material3.SnackbarHostState
 import androidx.compose.material3.Text
+import androidx.compose.material3.TextButton
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
+import androidx.compose.runtime.derivedStateOf
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
@@ -48,34 +56,95 @@ import androidx.compose.runtime.rememberCoroutineScope
 import androidx.compose.runtime.setValue
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
-import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.unit.dp
+import androidx.paging.LoadState
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
 import com.rohit.secondarycontacts.data.Contact
-import com.rohit.secondarycontacts.data.ContactIO
+import com.rohit.secondarycontacts.data.ContactExporter
+import com.rohit.secondarycontacts.data.ContactImporter
 import com.rohit.secondarycontacts.ui.components.ContactItem
+import com.rohit.secondarycontacts.ui.components.ContactItemPlaceholder
+import com.rohit.secondarycontacts.ui.components.SectionHeader
+import com.rohit.secondarycontacts.ui.components.SectionRail
 import com.rohit.secondarycontacts.ui.util.rememberCallHandler
 import com.rohit.secondarycontacts.viewmodel.ContactViewModel
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
+import java.util.Locale
 
-@OptIn(ExperimentalMaterial3Api::class)
+@OptIn(ExperimentalMaterial3Api::class, ExperimentalFoundationApi::class)
 @Composable
 fun ContactsScreen(
     viewModel: ContactViewModel,
     onAddContact: () -> Unit,
-    onEditContact: (Int) -> Unit
+    onEditContact: (Int) -> Unit,
+    onOpenQueryStats: (() -> Unit)?,
+    onOpenDuplicates: () -> Unit
 ) {
-    val contacts by viewModel.contacts.collectAsState()
+    val contacts = viewModel.pagedContacts.collectAsLazyPagingItems()
     val searchQuery by viewModel.searchQuery.collectAsState()
     val selectedGroup by viewModel.selectedGroup.collectAsState()
-    val context = LocalContext.current
+    val fuzzySearchEnabled by viewModel.fuzzySearchEnabled.collectAsState()
+    val sectionIndex by viewModel.sectionIndex.collectAsState()
+    val phoneRegion by viewModel.phoneRegion.collectAsState()
+    var showRegionDialog by remember { mutableStateOf(false) }
+    val listState = rememberLazyListState()
     val scope = rememberCoroutineScope()
     val snackbarHostState = remember { SnackbarHostState() }
     val callHandler = rememberCallHandler()
     var showMenu by remember { mutableStateOf(false) }
     var lastDeletedContact by remember { mutableStateOf<Contact?>(null) }
+    val importProgress by viewModel.importProgress.collectAsState()
+    var importLabel by remember { mutableStateOf("") }
+    val exportProgress by viewModel.exportProgress.collectAsState()
+    var exportLabel by remember { mutableStateOf("") }
+
+    LaunchedEffect(importProgress?.done) {
+        val progress = importProgress
+        if (progress != null && progress.done) {
+            viewModel.clearImportProgress()
+            val notes = listOfNotNull(
+                "${progress.errors} skipped".takeIf { progress.errors > 0 },
+                "${progress.droppedNumbers} extra numbers not imported".takeIf { progress.droppedNumbers > 0 }
+            )
+            val skipped = if (notes.isNotEmpty()) notes.joinToString(prefix = " (", postfix = ")") else ""
+            val message = if (progress.failed) {
+                "Import from $importLabel failed after ${progress.rowsWritten} contacts"
+            } else {
+                "${progress.rowsWritten} contacts imported from $importLabel$skipped"
+            }
+            scope.launch {
+                snackbarHostState.showSnackbar(message)
+            }
+        }
+    }
+
+    LaunchedEffect(exportProgress?.done) {
+        val progress = exportProgress
+        if (progress != null && progress.done) {
+            viewModel.clearExportProgress()
+            val message = if (progress.failed) {
+                "Export to $exportLabel failed after ${progress.rowsWritten} contacts"
+            } else {
+                "${progress.rowsWritten} contacts exported to $exportLabel"
+            }
+            scope.launch {
+                snackbarHostState.showSnackbar(message)
+            }
+        }
+    }
+
+    if (showRegionDialog) {
+        PhoneRegionDialog(
+            current = phoneRegion,
+            onDismiss = { showRegionDialog = false },
+            onSave = {
+                showRegionDialog = false
+                viewModel.setPhoneRegion(it)
+            }
+        )
+    }
 
     fun deleteWithSnackbar(contact: Contact) {
         lastDeletedContact = contact
@@ -97,14 +166,8 @@ fun ContactsScreen(
         ActivityResultContracts.CreateDocument("text/csv")
     ) { uri ->
         uri?.let {
-            scope.launch {
-                withContext(Dispatchers.IO) {
-                    context.contentResolver.openOutputStream(it)?.use { stream ->
-                        ContactIO.exportToCsv(contacts, stream)
-                    }
-                }
-                snackbarHostState.showSnackbar("${contacts.size} contacts exported to CSV")
-            }
+            exportLabel = "CSV"
+            viewModel.exportContacts(it, ContactExporter.Format.CSV)
         }
     }
 
@@ -113,14 +176,8 @@ fun ContactsScreen(
         ActivityResultContracts.CreateDocument("text/vcard")
     ) { uri ->
         uri?.let {
-            scope.launch {
-                withContext(Dispatchers.IO) {
-                    context.contentResolver.openOutputStream(it)?.use { stream ->
-                        ContactIO.exportToVCard(contacts, stream)
-                    }
-                }
-                snackbarHostState.showSnackbar("${contacts.size} contacts exported to vCard")
-            }
+            exportLabel = "vCard"
+            viewModel.exportContacts(it, ContactExporter.Format.VCARD)
         }
     }
 
@@ -129,15 +186,8 @@ fun ContactsScreen(
         ActivityResultContracts.GetContent()
     ) { uri ->
         uri?.let {
-            scope.launch {
-                val imported = withContext(Dispatchers.IO) {
-                    context.contentResolver.openInputStream(it)?.use { stream ->
-                        ContactIO.importFromCsv(stream)
-                    } ?: emptyList()
-                }
-                viewModel.importContacts(imported)
-                snackbarHostState.showSnackbar("${imported.size} contacts imported from CSV")
-            }
+            importLabel = "CSV"
+            viewModel.importContacts(it, ContactImporter.Format.CSV)
         }
     }
 
@@ -146,16 +196,53 @@ fun ContactsScreen(
         ActivityResultContracts.GetContent()
     ) { uri ->
         uri?.let {
-            scope.launch {
-                val imported = withContext(Dispatchers.IO) {
-                    context.contentResolver.openInputStream(it)?.use { stream ->
-                        ContactIO.importFromVCard(stream)
-                    } ?: emptyList()
+            importLabel = "vCard"
+            viewModel.importContacts(it, ContactImporter.Format.VCARD)
+        }
+    }
+
+    // Binary backup, keeps ids, photos and call history
+    val backupLauncher = rememberLauncherForActivityResult(
+        ActivityResultContracts.CreateDocument("application/octet-stream")
+    ) { uri ->
+        uri?.let {
+            exportLabel = "backup"
+            viewModel.backupContacts(it)
+        }
+    }
+
+    // Restore backup, merging unless the user chose to replace the whole book
+    var replaceAllOnRestore by remember { mutableStateOf(false) }
+    var showReplaceAllDialog by remember { mutableStateOf(false) }
+    val restoreLauncher = rememberLauncherForActivityResult(
+        ActivityResultContracts.GetContent()
+    ) { uri ->
+        uri?.let {
+            importLabel = "backup"
+            viewModel.restoreBackup(it, replaceAllOnRestore)
+        }
+    }
+
+    if (showReplaceAllDialog) {
+        AlertDialog(
+            onDismissRequest = { showReplaceAllDialog = false },
+            title = { Text("Replace all contacts?") },
+            text = { Text("Every contact on this device is deleted and replaced by the backup's contacts.") },
+            confirmButton = {
+                TextButton(onClick = {
+                    showReplaceAllDialog = false
+                    replaceAllOnRestore = true
+                    restoreLauncher.launch("*/*")
+                }) {
+                    Text("Choose backup")
+                }
+            },
+            dismissButton = {
+                TextButton(onClick = { showReplaceAllDialog = false }) {
+                    Text("Cancel")
                 }
-                viewModel.importContacts(imported)
-                snackbarHostState.showSnackbar("${imported.size} contacts imported from vCard")
             }
-        }
+        )
     }
 
     Scaffold(
@@ -228,6 +315,51 @@ fun ContactsScreen(
                                             importVCardLauncher.launch("text/*")
                                         }
                                     )
+                                    DropdownMenuItem(
+                                        text = { Text("Back up") },
+                                        onClick = {
+                                            showMenu = false
+                                            backupLauncher.launch("contacts.scbak")
+                                        }
+                                    )
+                                    DropdownMenuItem(
+                                        text = { Text("Restore backup") },
+                                        onClick = {
+                                            showMenu = false
+                                            replaceAllOnRestore = false
+                                            restoreLauncher.launch("*/*")
+                                        }
+                                    )
+                                    DropdownMenuItem(
+                                        text = { Text("Restore backup (replace all)") },
+                                        onClick = {
+                                            showMenu = false
+                                            showReplaceAllDialog = true
+                                        }
+                                    )
+                                    DropdownMenuItem(
+                                        text = { Text("Phone region") },
+                                        onClick = {
+                                            showMenu = false
+                                            showRegionDialog = true
+                                        }
+                                    )
+                                    DropdownMenuItem(
+                                        text = { Text("Find duplicates") },
+                                        onClick = {
+                                            showMenu = false
+                                            onOpenDuplicates()
+                                        }
+                                    )
+                                    if (onOpenQueryStats != null) {
+                                        DropdownMenuItem(
+                                            text = { Text("Query stats") },
+                                            onClick = {
+                                                showMenu = false
+                                                onOpenQueryStats()
+                                            }
+                                        )
+                                    }
                                 }
                             }
                         }
@@ -235,12 +367,66 @@ fun ContactsScreen(
                 ) { /* no suggestions content needed */ }
             }
 
+            exportProgress?.takeIf { !it.done }?.let { progress ->
+                Column(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(horizontal = 16.dp, vertical = 4.dp)
+                ) {
+                    if (progress.totalRows > 0) {
+                        LinearProgressIndicator(
+                            progress = (progress.rowsWritten.toFloat() / progress.totalRows).coerceIn(0f, 1f),
+                            modifier = Modifier.fillMaxWidth()
+                        )
+                    } else {
+                        LinearProgressIndicator(modifier = Modifier.fillMaxWidth())
+                    }
+                    Text(
+                        text = "Exporting… ${progress.rowsWritten} of ${progress.totalRows}",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant,
+                        modifier = Modifier.padding(top = 4.dp)
+                    )
+                }
+            }
+
+            importProgress?.takeIf { !it.done }?.let { progress ->
+                Column(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(horizontal = 16.dp, vertical = 4.dp)
+                ) {
+                    val total = progress.totalBytes
+                    if (total != null && total > 0) {
+                        LinearProgressIndicator(
+                            progress = (progress.bytesRead.toFloat() / total).coerceIn(0f, 1f),
+                            modifier = Modifier.fillMaxWidth()
+                        )
+                    } else {
+                        LinearProgressIndicator(modifier = Modifier.fillMaxWidth())
+                    }
+                    Text(
+                        text = "Importing… ${progress.rowsWritten} of ${progress.rowsParsed} written",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant,
+                        modifier = Modifier.padding(top = 4.dp)
+                    )
+                }
+            }
+
             // Group filter chips
             LazyRow(
                 modifier = Modifier.fillMaxWidth(),
                 contentPadding = PaddingValues(horizontal = 16.dp),
                 horizontalArrangement = Arrangement.spacedBy(8.dp)
             ) {
+                item {
+                    FilterChip(
+                        selected = fuzzySearchEnabled,
+                        onClick = { viewModel.onFuzzySearchChange(!fuzzySearchEnabled) },
+                        label = { Text("Fuzzy") }
+                    )
+                }
                 items(ContactViewModel.GROUPS) { group ->
                     FilterChip(
                         selected = selectedGroup == group,
@@ -250,8 +436,10 @@ fun ContactsScreen(
                 }
             }
 
+            val isEmpty = contacts.itemCount == 0 && contacts.loadState.refresh is LoadState.NotLoading
+
             AnimatedVisibility(
-                visible = contacts.isEmpty(),
+                visible = isEmpty,
                 enter = fadeIn(),
                 exit = fadeOut()
             ) {
@@ -300,12 +488,16 @@ fun ContactsScreen(
             }
 
             AnimatedVisibility(
-                visible = contacts.isNotEmpty(),
+                visible = !isEmpty,
                 enter = fadeIn(),
                 exit = fadeOut()
             ) {
-                LazyColumn(modifier = Modifier.fillMaxSize()) {
-                    items(contacts, key = { it.id }) { contact ->
+                val contactKey = contacts.itemKey { it.id }
+                val contactRow: @Composable (Int) -> Unit = { index ->
+                    val contact = contacts[index]
+                    if (contact == null) {
+                        ContactItemPlaceholder()
+                    } else {
                         ContactItem(
                             contact = contact,
                             onCall = {
@@ -318,7 +510,77 @@ fun ContactsScreen(
                         )
                     }
                 }
+                // Counts and pages refresh independently; fall back to a flat list while they disagree
+                val sections = sectionIndex?.takeIf { it.rowCount == contacts.itemCount }
+
+                Box(modifier = Modifier.fillMaxSize()) {
+                    LazyColumn(state = listState, modifier = Modifier.fillMaxSize()) {
+                        if (sections != null) {
+                            sections.sections.forEach { section ->
+                                stickyHeader(key = "section-${section.bucket}") {
+                                    SectionHeader(section.label)
+                                }
+                                items(
+                                    count = section.count,
+                                    key = { contactKey(section.firstRow + it) }
+                                ) { contactRow(section.firstRow + it) }
+                            }
+                        } else {
+                            items(count = contacts.itemCount, key = contactKey) { contactRow(it) }
+                        }
+                    }
+
+                    if (sections != null && sections.sections.size > 1) {
+                        val selectedSection by remember(sections) {
+                            derivedStateOf { sections.sectionAt(listState.firstVisibleItemIndex) }
+                        }
+                        SectionRail(
+                            labels = sections.sections.map { it.label },
+                            selected = selectedSection,
+                            onSelect = { index ->
+                                scope.launch { listState.scrollToItem(sections.sections[index].position) }
+                            },
+                            modifier = Modifier.align(Alignment.CenterEnd)
+                        )
+                    }
+                }
             }
         }
     }
 }
+
+// Empty input follows the device; anything else must be a two-letter country code
+@Composable
+private fun PhoneRegionDialog(current: String?, onDismiss: () -> Unit, onSave: (String?) -> Unit) {
+    var input by remember { mutableStateOf(current.orEmpty()) }
+    val region = input.trim().uppercase()
+    val valid = region.isEmpty() || (region.length == 2 && region.all { it in 'A'..'Z' })
+
+    AlertDialog(
+        onDismissRequest = onDismiss,
+        title = { Text("Phone region") },
+        text = {
+            Column {
+                Text("Country used to format phone numbers. Leave empty to follow the device (${Locale.getDefault().country.ifEmpty { "US" }}).")
+                Spacer(modifier = Modifier.height(12.dp))
+                OutlinedTextField(
+                    value = input,
+                    onValueChange = { input = it.take(2) },
+                    label = { Text("Country code, e.g. IN") },
+                    singleLine = true,
+                    isError = !valid
+                )
+            }
+        },
+        confirmButton = {
+            TextButton(onClick = { onSave(region.ifEmpty { null }) }, enabled = valid) {
+                Text("Save")
+            }
+        },
+        dismissButton = {
+            TextButton(onClick = onDismiss) {
+                Text("Cancel")
+            }
+        }
+    )
+}
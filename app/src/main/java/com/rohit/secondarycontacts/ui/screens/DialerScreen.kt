@@ -1,6 +1,5 @@
 package com.rohit.secondarycontacts.ui.screens
 
-import android.telephony.PhoneNumberUtils
 import android.view.HapticFeedbackConstants
 import androidx.compose.foundation.background
 import androidx.compose.foundation.clickable
@@ -49,7 +48,8 @@ import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.text.withStyle
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
-import com.rohit.secondarycontacts.viewmodel.ContactViewModel.Companion.nameToT9
+import com.rohit.secondarycontacts.data.PhoneFormatter
+import com.rohit.secondarycontacts.data.T9
 import com.rohit.secondarycontacts.ui.components.DialerButton
 import com.rohit.secondarycontacts.ui.theme.Green500
 import com.rohit.secondarycontacts.ui.util.rememberCallHandler
@@ -63,11 +63,8 @@ fun DialerScreen(viewModel: ContactViewModel) {
     val recentlyContacted by viewModel.recentlyContacted.collectAsState()
     val callHandler = rememberCallHandler()
 
-    fun formatPhoneDisplay(raw: String): String {
-        if (raw.isEmpty()) return " "
-        val formatted = PhoneNumberUtils.formatNumber(raw, "US")
-        return formatted ?: raw
-    }
+    val phoneRegion by viewModel.phoneRegion.collectAsState()
+    val phoneDisplay = remember(phoneNumber, phoneRegion) { PhoneFormatter.format(phoneNumber).ifEmpty { " " } }
 
     val keys = listOf(
         Triple("1", "", "1"),
@@ -193,7 +190,7 @@ fun DialerScreen(viewModel: ContactViewModel) {
 
         // Phone number display
         Text(
-            text = formatPhoneDisplay(phoneNumber),
+            text = phoneDisplay,
             fontSize = 32.sp,
             fontWeight = FontWeight.Light,
             maxLines = 1,
@@ -298,49 +295,25 @@ private fun SuggestionCard(
             horizontalArrangement = Arrangement.SpaceBetween
         ) {
             Column(modifier = Modifier.weight(1f)) {
-                // Highlight T9-matching portion of name
-                val t9 = nameToT9(contact.name)
-                val matchIndex = t9.indexOf(phoneNumber)
-                if (matchIndex >= 0 && phoneNumber.isNotEmpty()) {
-                    // Map T9 indices back to name characters
-                    var t9Pos = 0
-                    var nameStart = -1
-                    var nameEnd = -1
-                    for (i in contact.name.indices) {
-                        val ch = contact.name[i].lowercaseChar()
-                        if (ch in 'a'..'z') {
-                            if (t9Pos == matchIndex) nameStart = i
-                            if (t9Pos == matchIndex + phoneNumber.length - 1) {
-                                nameEnd = i + 1
-                                break
-                            }
-                            t9Pos++
-                        }
-                    }
-                    if (nameStart >= 0 && nameEnd > nameStart) {
-                        Text(
-                            text = buildAnnotatedString {
-                                append(contact.name.substring(0, nameStart))
+                // Highlight the letters the digits matched, as the suggestion tiers matched them
+                val nameRanges = remember(contact.name, phoneNumber) { T9.matchedRanges(contact.name, phoneNumber) }
+                if (nameRanges.isNotEmpty()) {
+                    Text(
+                        text = buildAnnotatedString {
+                            var at = 0
+                            for (range in nameRanges) {
+                                append(contact.name.substring(at, range.first))
                                 withStyle(SpanStyle(color = MaterialTheme.colorScheme.primary, fontWeight = FontWeight.Bold)) {
-                                    append(contact.name.substring(nameStart, nameEnd))
+                                    append(contact.name.substring(range.first, range.last + 1))
                                 }
-                                if (nameEnd < contact.name.length) {
-                                    append(contact.name.substring(nameEnd))
-                                }
-                            },
-                            style = MaterialTheme.typography.bodyLarge,
-                            maxLines = 1,
-                            overflow = TextOverflow.Ellipsis
-                        )
-                    } else {
-                        Text(
-                            text = contact.name,
-                            style = MaterialTheme.typography.bodyLarge,
-                            fontWeight = FontWeight.Medium,
-                            maxLines = 1,
-                            overflow = TextOverflow.Ellipsis
-                        )
-                    }
+                                at = range.last + 1
+                            }
+                            append(contact.name.substring(at))
+                        },
+                        style = MaterialTheme.typography.bodyLarge,
+                        maxLines = 1,
+                        overflow = TextOverflow.Ellipsis
+                    )
                 } else {
                     Text(
                         text = contact.name,
@@ -368,7 +341,7 @@ private fun SuggestionCard(
                     )
                 } else {
                     Text(
-                        text = contact.phoneNumber,
+                        text = contact.displayNumber.ifEmpty { contact.phoneNumber },
                         style = MaterialTheme.typography.bodySmall,
                         color = MaterialTheme.colorScheme.onSurfaceVariant
                     )
@@ -424,7 +397,7 @@ private fun RecentContactRow(
                 overflow = TextOverflow.Ellipsis
             )
             Text(
-                text = contact.phoneNumber,
+                text = contact.displayNumber.ifEmpty { contact.phoneNumber },
                 style = MaterialTheme.typography.bodySmall,
                 color = MaterialTheme.colorScheme.onSurfaceVariant.copy(alpha = 0.7f),
                 maxLines = 1
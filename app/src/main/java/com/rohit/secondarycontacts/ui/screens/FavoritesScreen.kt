@@ -11,7 +11,6 @@ import androidx.compose.foundation.layout.height
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.layout.size
 import androidx.compose.foundation.lazy.LazyColumn
-import androidx.compose.foundation.lazy.items
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.StarBorder
 import androidx.compose.material3.ExperimentalMaterial3Api
@@ -24,7 +23,6 @@ import androidx.compose.material3.TopAppBar
 import androidx.compose.material3.Icon
 import androidx.compose.material3.Text
 import androidx.compose.runtime.Composable
-import androidx.compose.runtime.collectAsState
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
@@ -34,8 +32,12 @@ import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.unit.dp
+import androidx.paging.LoadState
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
 import com.rohit.secondarycontacts.data.Contact
 import com.rohit.secondarycontacts.ui.components.ContactItem
+import com.rohit.secondarycontacts.ui.components.ContactItemPlaceholder
 import com.rohit.secondarycontacts.ui.util.rememberCallHandler
 import com.rohit.secondarycontacts.viewmodel.ContactViewModel
 import kotlinx.coroutines.launch
@@ -46,7 +48,7 @@ fun FavoritesScreen(
     viewModel: ContactViewModel,
     onEditContact: (Int) -> Unit
 ) {
-    val favorites by viewModel.favorites.collectAsState()
+    val favorites = viewModel.pagedFavorites.collectAsLazyPagingItems()
     val scope = rememberCoroutineScope()
     val snackbarHostState = remember { SnackbarHostState() }
     val callHandler = rememberCallHandler()
@@ -78,8 +80,10 @@ fun FavoritesScreen(
                 .fillMaxSize()
                 .padding(paddingValues)
         ) {
+            val isEmpty = favorites.itemCount == 0 && favorites.loadState.refresh is LoadState.NotLoading
+
             AnimatedVisibility(
-                visible = favorites.isEmpty(),
+                visible = isEmpty,
                 enter = fadeIn(),
                 exit = fadeOut()
             ) {
@@ -113,12 +117,20 @@ fun FavoritesScreen(
             }
 
             AnimatedVisibility(
-                visible = favorites.isNotEmpty(),
+                visible = !isEmpty,
                 enter = fadeIn(),
                 exit = fadeOut()
             ) {
                 LazyColumn(modifier = Modifier.fillMaxSize()) {
-                    items(favorites, key = { it.id }) { contact ->
+                    items(
+                        count = favorites.itemCount,
+                        key = favorites.itemKey { it.id }
+                    ) { index ->
+                        val contact = favorites[index]
+                        if (contact == null) {
+                            ContactItemPlaceholder()
+                            return@items
+                        }
                         ContactItem(
                             contact = contact,
                             onCall = {
@@ -38,7 +38,9 @@ private val bottomNavItems = listOf(
 fun HomeScreen(
     viewModel: ContactViewModel,
     onAddContact: () -> Unit,
-    onEditContact: (Int) -> Unit
+    onEditContact: (Int) -> Unit,
+    onOpenQueryStats: (() -> Unit)?,
+    onOpenDuplicates: () -> Unit
 ) {
     var selectedTab by rememberSaveable { mutableIntStateOf(0) }
 
@@ -71,7 +73,9 @@ fun HomeScreen(
                     1 -> ContactsScreen(
                         viewModel = viewModel,
                         onAddContact = onAddContact,
-                        onEditContact = onEditContact
+                        onEditContact = onEditContact,
+                        onOpenQueryStats = onOpenQueryStats,
+                        onOpenDuplicates = onOpenDuplicates
                     )
                     2 -> FavoritesScreen(
                         viewModel = viewModel,
@@ -1,28 +1,90 @@
 package com.rohit.secondarycontacts.viewmodel
 
 import android.app.Application
+import android.net.Uri
+import android.os.ParcelFileDescriptor
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
 import com.rohit.secondarycontacts.SecondaryContactsApp
 import com.rohit.secondarycontacts.data.Contact
+import com.rohit.secondarycontacts.data.ContactBackup
+import com.rohit.secondarycontacts.data.ContactChangeFeed
 import com.rohit.secondarycontacts.data.ContactDao
+import com.rohit.secondarycontacts.data.ContactExporter
+import com.rohit.secondarycontacts.data.ContactImporter
+import com.rohit.secondarycontacts.data.ContactSnapshot
+import com.rohit.secondarycontacts.data.ContactWriteQueue
+import com.rohit.secondarycontacts.data.DuplicateDetector
+import com.rohit.secondarycontacts.data.DuplicateMatch
+import com.rohit.secondarycontacts.data.ExportProgress
+import com.rohit.secondarycontacts.data.FuzzySearch
+import com.rohit.secondarycontacts.data.ImportProgress
+import com.rohit.secondarycontacts.data.PhoneDigits
+import com.rohit.secondarycontacts.data.SectionIndex
+import com.rohit.secondarycontacts.data.SortKeyRefresher
+import com.rohit.secondarycontacts.data.SortedPatch
+import com.rohit.secondarycontacts.data.SuggestionRanking
+import com.rohit.secondarycontacts.data.T9Index
+import com.rohit.secondarycontacts.data.T9Trie
+import kotlinx.collections.immutable.ImmutableList
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.persistentListOf
+import kotlinx.collections.immutable.toPersistentList
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.conflate
 import kotlinx.coroutines.flow.debounce
 import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.flow.onSubscription
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.FileNotFoundException
 
 class ContactViewModel(application: Application) : AndroidViewModel(application) {
 
     private val dao: ContactDao = (application as SecondaryContactsApp).database.contactDao()
+    private val changeFeed: ContactChangeFeed = (application as SecondaryContactsApp).changeFeed
+    private val writeQueue: ContactWriteQueue = (application as SecondaryContactsApp).writeQueue
+    private val importer: ContactImporter = (application as SecondaryContactsApp).importer
+    private val exporter: ContactExporter = (application as SecondaryContactsApp).exporter
+    private val backup: ContactBackup = (application as SecondaryContactsApp).backup
+    private val t9Index: T9Index = (application as SecondaryContactsApp).t9Index
+    private val fuzzySearch: FuzzySearch = (application as SecondaryContactsApp).fuzzySearch
+    private val duplicateDetector: DuplicateDetector = (application as SecondaryContactsApp).duplicateDetector
+    private val sortKeyRefresher: SortKeyRefresher = (application as SecondaryContactsApp).sortKeyRefresher
+
+    // Last persisted first screen, shown until live queries deliver
+    private val snapshot: ContactSnapshot = (application as SecondaryContactsApp).snapshotStore.initial
+    private var snapshotPending = snapshot.firstPage.isNotEmpty()
+
+    init {
+        val app = application as SecondaryContactsApp
+        app.snapshotStore.startWriting(app.database, changeFeed)
+    }
+
+    private val _importProgress = MutableStateFlow<ImportProgress?>(null)
+    val importProgress: StateFlow<ImportProgress?> = _importProgress.asStateFlow()
+
+    private val _exportProgress = MutableStateFlow<ExportProgress?>(null)
+    val exportProgress: StateFlow<ExportProgress?> = _exportProgress.asStateFlow()
 
     private val _searchQuery = MutableStateFlow("")
     val searchQuery: StateFlow<String> = _searchQuery.asStateFlow()
@@ -30,70 +92,183 @@ class ContactViewModel(application: Application) : AndroidViewModel(application)
     private val _selectedGroup = MutableStateFlow("All")
     val selectedGroup: StateFlow<String> = _selectedGroup.asStateFlow()
 
+    private val _fuzzySearch = MutableStateFlow(false)
+    val fuzzySearchEnabled: StateFlow<Boolean> = _fuzzySearch.asStateFlow()
+
+    // Null follows the device locale's country
+    val phoneRegion: StateFlow<String?> = sortKeyRefresher.phoneRegion
+
     @OptIn(ExperimentalCoroutinesApi::class)
-    private val baseContacts = _searchQuery
-        .flatMapLatest { query ->
-            if (query.isBlank()) dao.getAllContacts()
-            else dao.searchContacts(query)
+    val pagedContacts: Flow<PagingData<Contact>> = combine(_searchQuery, _selectedGroup, _fuzzySearch) { query, group, fuzzy ->
+        Triple(query, group, fuzzy)
+    }
+        .flatMapLatest { (query, group, fuzzy) ->
+            if (fuzzy && query.isNotBlank()) fuzzyResults(query, group).map { PagingData.from(it) }
+            else Pager(PAGING_CONFIG) {
+                when {
+                    query.isNotBlank() && group != "All" -> dao.searchContactsInGroupPaged(query, group)
+                    query.isNotBlank() -> dao.searchContactsPaged(query)
+                    group != "All" -> dao.getContactsByGroupPaged(group)
+                    else -> dao.getAllContactsPaged()
+                }
+            }.flow.let { live ->
+                // Paging keeps showing the snapshot until the first live page has loaded
+                if (snapshotPending && query.isBlank() && group == "All") {
+                    snapshotPending = false
+                    live.onStart { emit(PagingData.from(snapshot.firstPage)) }
+                } else {
+                    live
+                }
+            }
         }
+        .cachedIn(viewModelScope)
 
+    // Only the unfiltered (or group-filtered) list is in sortKey order; search results get no sections
     @OptIn(ExperimentalCoroutinesApi::class)
-    val contacts: StateFlow<List<Contact>> = combine(baseContacts, _selectedGroup) { contacts, group ->
-        if (group == "All") contacts
-        else contacts.filter { it.group == group }
-    }.stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+    val sectionIndex: StateFlow<SectionIndex?> = combine(_searchQuery, _selectedGroup) { query, group ->
+        query to group
+    }
+        .flatMapLatest { (query, group) ->
+            when {
+                query.isNotBlank() -> flowOf(null)
+                group != "All" -> dao.observeSectionCountsInGroup(group).map { SectionIndex(it) }
+                else -> dao.observeSectionCounts().map { SectionIndex(it) }
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), null)
 
-    val favorites: StateFlow<List<Contact>> = dao.getFavoriteContacts()
-        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+    val pagedFavorites: Flow<PagingData<Contact>> = Pager(PAGING_CONFIG) { dao.getFavoriteContactsPaged() }
+        .flow
+        .onStart { if (snapshot.favorites.isNotEmpty()) emit(PagingData.from(snapshot.favorites)) }
+        .cachedIn(viewModelScope)
 
-    val recentlyContacted: StateFlow<List<Contact>> = dao.getRecentlyContacted()
-        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+    val recentlyContacted: StateFlow<ImmutableList<Contact>> = patchedList(
+        load = { dao.loadRecentlyContacted(RECENTS_LIMIT) },
+        matches = { it.lastCalledAt != null },
+        comparator = compareByDescending { it.lastCalledAt },
+        limit = RECENTS_LIMIT
+    ).stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), snapshot.recents.toPersistentList())
+
+    // Fuzzy results are a bounded list, so they are recomputed once the index has taken in each
+    // change batch rather than paged
+    private fun fuzzyResults(query: String, group: String): Flow<List<Contact>> = flow {
+        suspend fun load() = fuzzySearch.search(query, group.takeIf { it != "All" })
+        var current = emptyList<Contact>()
+        fuzzySearch.updates
+            .onSubscription {
+                current = load()
+                this@flow.emit(current)
+            }
+            .collect {
+                val next = load()
+                if (next != current) {
+                    current = next
+                    emit(next)
+                }
+            }
+    }
 
     private val _dialerInput = MutableStateFlow("")
 
     @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
-    val dialerSuggestions: StateFlow<List<Contact>> = _dialerInput
+    val dialerSuggestions: StateFlow<ImmutableList<Contact>> = _dialerInput
         .debounce(150)
         .flatMapLatest { digits ->
-            if (digits.length < 2) flowOf(emptyList())
-            else dao.getAllContacts().map { contacts ->
-                contacts.filter { contact ->
-                    contact.phoneNumber.contains(digits) ||
-                        nameMatchesT9(contact.name, digits)
-                }
-            }
+            val now = System.currentTimeMillis()
+            if (digits.length < 2) flowOf(persistentListOf())
+            else patchedList(
+                load = { loadDialerSuggestions(digits, now) },
+                matches = { suggestionScore(it, digits, now) > 0 },
+                comparator = compareByDescending { suggestionScore(it, digits, now) },
+                limit = SUGGESTION_LIMIT
+            )
         }
-        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), persistentListOf())
 
-    fun onDialerInputChange(digits: String) {
-        _dialerInput.value = digits
+    // Falls back to the t9Key range query until the in-memory index has finished building
+    private suspend fun loadDialerSuggestions(digits: String, now: Long): List<Contact> {
+        val byName = if (t9Index.ready.value) {
+            val ids = t9Index.search(digits, SUGGESTION_LIMIT, now).map { it.contactId }
+            if (ids.isEmpty()) emptyList() else dao.getContactsByIds(ids)
+        } else {
+            dao.loadDialerSuggestions(digits, SUGGESTION_CANDIDATES)
+        }
+        val byPhone = dao.loadPhoneSuggestions(digits, SUGGESTION_CANDIDATES)
+        return SuggestionRanking.topK((byName + byPhone).distinctBy { it.id }, SUGGESTION_LIMIT) {
+            suggestionScore(it, digits, now)
+        }
     }
 
-    companion object {
-        private val charToDigit = mapOf(
-            'a' to '2', 'b' to '2', 'c' to '2',
-            'd' to '3', 'e' to '3', 'f' to '3',
-            'g' to '4', 'h' to '4', 'i' to '4',
-            'j' to '5', 'k' to '5', 'l' to '5',
-            'm' to '6', 'n' to '6', 'o' to '6',
-            'p' to '7', 'q' to '7', 'r' to '7', 's' to '7',
-            't' to '8', 'u' to '8', 'v' to '8',
-            'w' to '9', 'x' to '9', 'y' to '9', 'z' to '9'
+    private fun suggestionScore(contact: Contact, digits: String, now: Long): Double =
+        SuggestionRanking.score(
+            T9Trie.matchType(contact.name, digits),
+            PhoneDigits.matchesDialed(contact.phoneNumber, digits),
+            contact.lastCalledAt,
+            contact.callCount,
+            now
         )
 
-        fun nameToT9(name: String): String =
-            name.lowercase().mapNotNull { charToDigit[it] }.joinToString("")
+    // Loads once, then applies row-level changes from the change feed instead of
+    // re-running the query on every write to `contacts`. Patches edit a persistent list in
+    // place, so an unchanged prefix/suffix is shared with the previous emission.
+    private fun patchedList(
+        load: suspend () -> List<Contact>,
+        matches: (Contact) -> Boolean,
+        comparator: Comparator<Contact>,
+        limit: Int = Int.MAX_VALUE
+    ): Flow<PersistentList<Contact>> = flow {
+        var current = persistentListOf<Contact>()
+        changeFeed.batches
+            .onSubscription {
+                current = load().toPersistentList()
+                this@flow.emit(current)
+            }
+            .collect { batch ->
+                val ids = batch.mapTo(HashSet()) { it.contactId }
+                val next = if (ids.size > MAX_PATCH_SIZE) {
+                    load().toPersistentList()
+                } else {
+                    val rows = dao.getContactsByIds(ids.toList()).filter(matches)
+                    val patched = SortedPatch.apply(current, ids, rows, comparator, limit)
+                    // A full bounded list that lost rows may have more candidates outside the window
+                    if (current.size >= limit && patched.size < limit) load().toPersistentList() else patched
+                }
+                if (next != current) {
+                    current = next
+                    emit(next)
+                }
+            }
+    }
 
-        fun nameMatchesT9(name: String, digits: String): Boolean =
-            nameToT9(name).contains(digits)
+    fun onDialerInputChange(digits: String) {
+        _dialerInput.value = digits
+    }
 
+    companion object {
         val GROUPS = listOf("All", "Family", "Work", "Friends", "Other")
+
+        private val PAGING_CONFIG = PagingConfig(pageSize = 50, initialLoadSize = 100)
+        private const val RECENTS_LIMIT = 10
+        private const val MAX_PATCH_SIZE = 500
+        private const val SUGGESTION_LIMIT = 8
+        private const val SUGGESTION_CANDIDATES = 64
+        private const val DUPLICATE_DISPLAY_LIMIT = 200
+        private const val MAX_QUERY_IDS = 900
     }
 
     fun onSearchQueryChange(query: String) {
         _searchQuery.value = query
     }
 
+    fun onFuzzySearchChange(enabled: Boolean) {
+        _fuzzySearch.value = enabled
+    }
+
+    // Stored display numbers are re-derived in the background for the new region
+    fun setPhoneRegion(region: String?) {
+        sortKeyRefresher.setPhoneRegion(region)
+    }
+
     fun onGroupSelected(group: String) {
         _selectedGroup.value = group
     }
@@ -105,26 +280,52 @@ class ContactViewModel(application: Application) : AndroidViewModel(application)
     }
 
     fun updateContact(contact: Contact) {
-        viewModelScope.launch {
-            dao.update(contact)
-        }
+        writeQueue.update(contact)
     }
 
     fun deleteContact(contact: Contact) {
-        viewModelScope.launch {
-            dao.delete(contact)
-        }
+        writeQueue.delete(contact.id)
     }
 
     fun toggleFavorite(contact: Contact) {
+        writeQueue.toggleFavorite(contact.id)
+    }
+
+    fun markContactCalled(contact: Contact) {
+        writeQueue.markCalled(contact.id, System.currentTimeMillis())
+    }
+
+    // Null while a scan is running
+    private val _duplicates = MutableStateFlow<List<DuplicateMatch>?>(null)
+    val duplicates: StateFlow<List<DuplicateMatch>?> = _duplicates.asStateFlow()
+
+    fun findDuplicates() {
+        _duplicates.value = null
         viewModelScope.launch {
-            dao.toggleFavorite(contact.id, !contact.isFavorite)
+            val groups = withContext(Dispatchers.Default) { duplicateDetector.findGroups() }
+                .take(DUPLICATE_DISPLAY_LIMIT)
+            val contacts = groups.flatMap { it.contactIds }
+                .chunked(MAX_QUERY_IDS)
+                .flatMap { dao.getContactsByIds(it) }
+                .associateBy { it.id }
+            _duplicates.value = groups.mapNotNull { group ->
+                val members = group.contactIds.mapNotNull { contacts[it] }
+                if (members.size > 1) DuplicateMatch(members, group.score) else null
+            }
         }
     }
 
-    fun markContactCalled(contact: Contact) {
+    // Keeps the most-called contact (oldest on ties) and folds the rest into it. Matches with
+    // different numbers are left for the user to resolve by hand.
+    fun mergeDuplicates(match: DuplicateMatch) {
+        if (!match.mergeable) return
+        val keep = match.contacts.maxWith(compareBy<Contact> { it.callCount }.thenByDescending { it.id })
+        _duplicates.value = _duplicates.value?.filterNot { it == match }
         viewModelScope.launch {
-            dao.markCalled(contact.id, System.currentTimeMillis())
+            // Refused if a number changed since the scan; scan again to show the match as it is now
+            if (dao.mergeContacts(keep.id, match.contacts.map { it.id }.filter { it != keep.id }) == null) {
+                findDuplicates()
+            }
         }
     }
 
@@ -134,6 +335,108 @@ class ContactViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
+    fun importContacts(uri: Uri, format: ContactImporter.Format) {
+        val resolver = getApplication<Application>().contentResolver
+        launchTransfer(::failImport) {
+            // Seekable CSV files are split and parsed on all cores; pipes and vCards stream
+            if (format == ContactImporter.Format.CSV) {
+                val file = withContext(Dispatchers.IO) { resolver.openFileDescriptor(uri, "r") }
+                if (file != null && file.statSize > 0) {
+                    ParcelFileDescriptor.AutoCloseInputStream(file).use { input ->
+                        importer.importCsvParallel(input)
+                            .conflate()
+                            .collect { _importProgress.value = it }
+                    }
+                    return@launchTransfer
+                }
+                withContext(Dispatchers.IO) { file?.close() }
+            }
+            val totalBytes = withContext(Dispatchers.IO) {
+                resolver.openAssetFileDescriptor(uri, "r")?.use { it.length }?.takeIf { it >= 0 }
+            }
+            val stream = withContext(Dispatchers.IO) { resolver.openInputStream(uri) }
+                ?: throw FileNotFoundException(uri.toString())
+            stream.use {
+                importer.importFrom(it, format, totalBytes)
+                    .conflate()
+                    .collect { progress -> _importProgress.value = progress }
+            }
+        }
+    }
+
+    fun clearImportProgress() {
+        _importProgress.value = null
+    }
+
+    fun exportContacts(uri: Uri, format: ContactExporter.Format) {
+        val resolver = getApplication<Application>().contentResolver
+        launchTransfer(::failExport) {
+            val stream = withContext(Dispatchers.IO) { resolver.openOutputStream(uri) }
+                ?: throw FileNotFoundException(uri.toString())
+            stream.use {
+                exporter.exportTo(it, format)
+                    .conflate()
+                    .collect { progress -> _exportProgress.value = progress }
+            }
+        }
+    }
+
+    fun clearExportProgress() {
+        _exportProgress.value = null
+    }
+
+    fun backupContacts(uri: Uri) {
+        val resolver = getApplication<Application>().contentResolver
+        launchTransfer(::failExport) {
+            val stream = withContext(Dispatchers.IO) { resolver.openOutputStream(uri) }
+                ?: throw FileNotFoundException(uri.toString())
+            stream.use {
+                backup.backupTo(it)
+                    .conflate()
+                    .collect { progress -> _exportProgress.value = progress }
+            }
+        }
+    }
+
+    // Merges into the book unless `replaceAll`, which swaps the whole book for the backup
+    fun restoreBackup(uri: Uri, replaceAll: Boolean = false) {
+        val resolver = getApplication<Application>().contentResolver
+        launchTransfer(::failImport) {
+            val totalBytes = withContext(Dispatchers.IO) {
+                resolver.openAssetFileDescriptor(uri, "r")?.use { it.length }?.takeIf { it >= 0 }
+            }
+            val stream = withContext(Dispatchers.IO) { resolver.openInputStream(uri) }
+                ?: throw FileNotFoundException(uri.toString())
+            stream.use {
+                backup.restoreFrom(it, totalBytes, replaceAll)
+                    .conflate()
+                    .collect { progress -> _importProgress.value = progress }
+            }
+        }
+    }
+
+    // A revoked grant, a provider crash or an I/O error ends the transfer as failed, so the
+    // progress bar clears and the screen can say so; rows already written stay
+    private fun launchTransfer(onFailure: () -> Unit, block: suspend CoroutineScope.() -> Unit) {
+        viewModelScope.launch {
+            try {
+                block()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                onFailure()
+            }
+        }
+    }
+
+    private fun failImport() {
+        _importProgress.value = (_importProgress.value ?: ImportProgress()).copy(done = true, failed = true)
+    }
+
+    private fun failExport() {
+        _exportProgress.value = (_exportProgress.value ?: ExportProgress()).copy(done = true, failed = true)
+    }
+
     suspend fun getContactById(id: Int): Contact? {
         return dao.getContactById(id)
     }
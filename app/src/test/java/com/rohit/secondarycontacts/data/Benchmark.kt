@@ -0,0 +1,37 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.rules.TestWatcher
+import org.junit.runner.Description
+import java.io.File
+
+// JUnit category for timing and memory benchmarks. They build books of 100k+ rows and take
+// seconds each, so the default unit-test run excludes them; `./gradlew testDebugUnitTest
+// -Pbenchmarks` runs only them (see app/build.gradle.kts).
+interface Benchmark
+
+// Collects a benchmark's figures into build/reports/benchmarks/<TestClass>.txt, one
+// "method: figure" line each, instead of printing them into the test log
+class BenchmarkReport : TestWatcher() {
+    private var description: Description? = null
+
+    override fun starting(description: Description) {
+        this.description = description
+    }
+
+    fun record(line: String) {
+        val test = description ?: error("BenchmarkReport used outside a test")
+        val dir = File(System.getProperty(DIR_PROPERTY) ?: "build/reports/benchmarks")
+        dir.mkdirs()
+        val file = File(dir, "${test.testClass.simpleName}.txt")
+        // Each run replaces the figures of the last one
+        synchronized(started) {
+            if (started.add(file.path)) file.writeText("")
+        }
+        file.appendText("${test.methodName}: $line\n")
+    }
+
+    companion object {
+        const val DIR_PROPERTY = "benchmarks.dir"
+        private val started = HashSet<String>()
+    }
+}
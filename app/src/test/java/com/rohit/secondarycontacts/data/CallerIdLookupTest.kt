@@ -0,0 +1,153 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.util.Collections
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class CallerIdLookupTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private lateinit var database: ContactDatabase
+    private lateinit var dao: ContactDao
+    private lateinit var scope: CoroutineScope
+    private val statements = Collections.synchronizedList(ArrayList<String>())
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext())
+            .setQueryCallback({ sql, _ -> statements += sql }, Runnable::run)
+            .build()
+        dao = database.contactDao()
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        database.close()
+    }
+
+    // Stored numbers of 7 to 10 digits match incoming numbers that add a trunk or country code
+    @Test
+    fun matchesOnTrailingSevenToTenDigits() = runBlocking {
+        dao.insertAll(
+            listOf(
+                Contact(name = "Seven", phoneNumber = "555-0107"),
+                Contact(name = "Eight", phoneNumber = "2 555 0108"),
+                Contact(name = "Nine", phoneNumber = "32 555 0109"),
+                Contact(name = "Ten", phoneNumber = "(415) 555-0110")
+            )
+        )
+        val lookup = awaitFilter()
+
+        assertEquals("Seven", lookup.lookupByIncomingNumber("+1 415 555 0107")?.name)
+        assertEquals("Eight", lookup.lookupByIncomingNumber("+44 2 555 0108")?.name)
+        assertEquals("Nine", lookup.lookupByIncomingNumber("+49 32 555 0109")?.name)
+        assertEquals("Ten", lookup.lookupByIncomingNumber("+1 415-555-0110")?.name)
+        // Same last 7 digits, different area code: the stored 10 digits must all match
+        assertNull(lookup.lookupByIncomingNumber("+1 650 555 0110"))
+        assertNull(lookup.lookupByIncomingNumber(""))
+    }
+
+    @Test
+    fun filterMissNeverQueriesTheDatabase() = runBlocking {
+        dao.insertAll((1..100).map { Contact(name = "Contact $it", phoneNumber = "+1 415 555 %04d".format(it)) })
+        val lookup = awaitFilter()
+        statements.clear()
+
+        repeat(100) { assertNull(lookup.lookupByIncomingNumber("+1 212 777 %04d".format(it))) }
+
+        assertTrue(statements.toString(), statements.none { it.contains("reversedDigits") })
+    }
+
+    // A number added after the build must be patched in, or the filter would turn its calls away
+    @Test
+    fun changeFeedPatchesTheFilter() = runBlocking {
+        dao.insert(Contact(name = "Ann", phoneNumber = "555-0100"))
+        val lookup = awaitFilter()
+
+        dao.insert(Contact(name = "Lee", phoneNumber = "+1 212 555 0142"))
+        val added = dao.loadContactsAfter(0, 10).single { it.name == "Lee" }
+        assertEquals("Lee", awaitMatch(lookup, "212 555 0142"))
+
+        dao.update(added.copy(phoneNumber = "+1 212 555 0199"))
+        assertEquals("Lee", awaitMatch(lookup, "212 555 0199"))
+    }
+
+    @Category(Benchmark::class)
+    @Test
+    fun lookupLatency() = runBlocking {
+        (0 until BOOK_SIZE).chunked(5_000).forEach { chunk ->
+            dao.insertAll(chunk.map { Contact(name = "Contact $it", phoneNumber = "+1 415 %07d".format(it)) })
+        }
+        val lookup = awaitFilter()
+        val hits = List(LOOKUPS) { "415%07d".format((it * 7919) % BOOK_SIZE) }
+        val misses = List(LOOKUPS) { "212%07d".format(5_000_000 + it) }
+        repeat(2) {
+            hits.forEach { lookup.lookupByIncomingNumber(it) }
+            misses.forEach { lookup.lookupByIncomingNumber(it) }
+        }
+
+        var start = System.nanoTime()
+        hits.forEach { assertTrue(lookup.lookupByIncomingNumber(it) != null) }
+        val hitMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS
+        statements.clear()
+        start = System.nanoTime()
+        misses.forEach { assertNull(lookup.lookupByIncomingNumber(it)) }
+        val missMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS
+        val falsePositives = statements.count { it.contains("reversedDigits") }
+        report.record("%.1f µs per hit, %.2f µs per miss (%d of %d misses reached SQLite) over %d contacts".format(hitMicros, missMicros, falsePositives, LOOKUPS, BOOK_SIZE))
+
+        assertTrue("$hitMicros µs per hit", hitMicros < 500)
+        assertTrue("$missMicros µs per miss", missMicros < 50)
+    }
+
+    // The build runs in the background; once a number outside the book stops reaching SQLite,
+    // the filter is in place
+    private suspend fun awaitFilter(): CallerIdLookup {
+        val lookup = CallerIdLookup(database, ContactChangeFeed(database, scope), scope)
+        withTimeout(10_000) {
+            while (true) {
+                statements.clear()
+                lookup.lookupByIncomingNumber("+1 999 888 7766")
+                if (statements.none { it.contains("reversedDigits") }) break
+                delay(10)
+            }
+        }
+        return lookup
+    }
+
+    private suspend fun awaitMatch(lookup: CallerIdLookup, number: String): String? = withTimeout(5_000) {
+        var match = lookup.lookupByIncomingNumber(number)
+        while (match == null) {
+            delay(10)
+            match = lookup.lookupByIncomingNumber(number)
+        }
+        match.name
+    }
+
+    companion object {
+        private const val BOOK_SIZE = 100_000
+        private const val LOOKUPS = 2_000
+    }
+}
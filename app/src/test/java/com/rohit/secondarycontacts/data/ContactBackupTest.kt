@@ -0,0 +1,181 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.flow.last
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStreamWriter
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class ContactBackupTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private lateinit var source: ContactDatabase
+    private lateinit var target: ContactDatabase
+
+    @Before
+    fun setUp() {
+        source = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext()).build()
+        target = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext()).build()
+    }
+
+    @After
+    fun tearDown() {
+        source.close()
+        target.close()
+    }
+
+    @Test
+    fun roundTripKeepsIdsCallHistoryAndFlags() = runBlocking {
+        source.contactDao().insertAll(
+            listOf(
+                Contact(name = "Kim Lee", phoneNumber = "+44 20 7946 0100", group = "Work", isFavorite = true, lastCalledAt = 1_700_000_000_000L, callCount = 7),
+                Contact(name = "Zoë Müller", phoneNumber = "555-0101", photoUri = "file:///photos/a.jpg")
+            )
+        )
+        for (compress in listOf(true, false)) {
+            target.contactDao().deleteAll()
+            val progress = restore(backup(compress), target)
+
+            assertEquals(2, progress.rowsWritten)
+            assertEquals(0, progress.errors)
+            assertEquals(comparable(all(source)), comparable(all(target)))
+        }
+    }
+
+    // An uncompressed backup spanning several blocks with one byte flipped inside a block:
+    // only that block's contacts are lost
+    @Test
+    fun corruptBlockIsSkipped() = runBlocking {
+        val names = SyntheticNames(seed = 5)
+        source.contactDao().insertAll((1..8_000).map { Contact(name = names.next(), phoneNumber = "555${1_000_000 + it}") })
+        val bytes = backup(compress = false)
+        bytes[bytes.size / 2] = (bytes[bytes.size / 2].toInt() xor 0x5A).toByte()
+
+        val progress = restore(bytes, target)
+        val restored = all(target)
+
+        assertEquals(1, progress.errors)
+        assertTrue("${restored.size} restored", restored.size in 4_000 until 8_000)
+        val byId = all(source).associateBy { it.id }
+        assertTrue(restored.all { byId[it.id]?.name == it.name })
+    }
+
+    // Backup ids that are taken by a different contact get fresh ids; the same contact is
+    // replaced rather than duplicated
+    @Test
+    fun mergingRestoreNeverOverwritesUnrelatedContacts() = runBlocking {
+        source.contactDao().insertAll(
+            listOf(Contact(name = "Kim Lee", phoneNumber = "5550100", callCount = 3), Contact(name = "Ann Park", phoneNumber = "5550101"))
+        )
+        target.contactDao().insertAll(
+            listOf(Contact(name = "Kim Lee", phoneNumber = "555-0100"), Contact(name = "Bob Stone", phoneNumber = "5550199"))
+        )
+
+        restore(backup(), target)
+        val byName = all(target).associateBy { it.name }
+
+        assertEquals(setOf("Kim Lee", "Ann Park", "Bob Stone"), byName.keys)
+        assertEquals(3, all(target).size)
+        assertEquals(1, byName.getValue("Kim Lee").id)
+        assertEquals(3, byName.getValue("Kim Lee").callCount)
+        assertEquals(2, byName.getValue("Bob Stone").id)
+        assertTrue(byName.getValue("Ann Park").id > 2)
+    }
+
+    @Test
+    fun replaceAllSwapsTheBookButNotForAnUnreadableFile() = runBlocking {
+        source.contactDao().insertAll(listOf(Contact(name = "Ann Park", phoneNumber = "5550101")))
+        target.contactDao().insertAll(listOf(Contact(name = "Bob Stone", phoneNumber = "5550199")))
+
+        val rejected = restore("not a backup".toByteArray(), target, replaceAll = true)
+        assertEquals(1, rejected.errors)
+        assertEquals(listOf("Bob Stone"), all(target).map { it.name })
+
+        restore(backup(), target, replaceAll = true)
+        assertEquals(listOf("Ann Park"), all(target).map { it.name })
+    }
+
+    // The same book out of one database and into another through the backup format, CSV and
+    // vCard; each side includes the database reads or writes it needs
+    @Category(Benchmark::class)
+    @Test
+    fun backupAgainstCsvAndVCard() = runBlocking {
+        val names = SyntheticNames(seed = 9)
+        (0 until BOOK_SIZE).chunked(5_000).forEach { chunk ->
+            source.contactDao().insertAll(chunk.map {
+                Contact(name = names.next(), phoneNumber = "+1 555 ${1_000_000 + it}", group = if (it % 3 == 0) "Work" else "", isFavorite = it % 50 == 0)
+            })
+        }
+        val formats = listOf<Pair<String, suspend () -> ByteArray>>(
+            "backup" to { backup(compress = true) },
+            "backup (uncompressed)" to { backup(compress = false) },
+            "CSV" to { export { writer -> ContactIO.writeCsvHeader(writer); all(source).forEach { ContactIO.writeCsvRow(writer, it) } } },
+            "vCard" to { export { writer -> all(source).forEach { ContactIO.writeVCard(writer, it) } } }
+        )
+        val sizes = HashMap<String, Int>()
+        for ((format, write) in formats) {
+            target.contactDao().deleteAll()
+            var start = System.nanoTime()
+            val bytes = write()
+            val writeMillis = (System.nanoTime() - start) / 1_000_000
+            start = System.nanoTime()
+            when (format) {
+                "CSV" -> import(ContactIO.readCsv(bytes.inputStream().reader()))
+                "vCard" -> import(ContactIO.readVCard(bytes.inputStream().reader()))
+                else -> restore(bytes, target)
+            }
+            val readMillis = (System.nanoTime() - start) / 1_000_000
+            sizes[format] = bytes.size
+            report.record("%s: %d KB, write %d ms, read %d ms for %d contacts".format(format, bytes.size / 1024, writeMillis, readMillis, BOOK_SIZE))
+
+            assertEquals(format, BOOK_SIZE, target.contactDao().countContacts())
+        }
+
+        assertTrue(sizes.toString(), sizes.getValue("backup") < sizes.getValue("CSV"))
+    }
+
+    private suspend fun export(write: suspend (OutputStreamWriter) -> Unit): ByteArray {
+        val out = ByteArrayOutputStream()
+        OutputStreamWriter(out).use { write(it) }
+        return out.toByteArray()
+    }
+
+    private suspend fun import(contacts: Sequence<Contact>) {
+        contacts.chunked(IMPORT_CHUNK).forEach { target.contactDao().insertAll(it) }
+    }
+
+    private suspend fun backup(compress: Boolean = true): ByteArray {
+        val out = ByteArrayOutputStream()
+        ContactBackup(source).backupTo(out, compress).last()
+        return out.toByteArray()
+    }
+
+    private suspend fun restore(bytes: ByteArray, database: ContactDatabase, replaceAll: Boolean = false) =
+        ContactBackup(database).restoreFrom(ByteArrayInputStream(bytes), bytes.size.toLong(), replaceAll).last()
+
+    private suspend fun all(database: ContactDatabase) = database.contactDao().loadContactsAfter(0, Int.MAX_VALUE)
+
+    private fun comparable(contacts: List<Contact>) = contacts.map {
+        listOf(it.id, it.name, it.phoneNumber, it.group, it.photoUri, it.isFavorite, it.lastCalledAt, it.callCount)
+    }
+
+    companion object {
+        private const val BOOK_SIZE = 100_000
+        // ContactImporter's chunk size
+        private const val IMPORT_CHUNK = 500
+    }
+}
@@ -0,0 +1,164 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.paging.PagingSource
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.util.Collections
+
+// Runs every ContactDao query against a real SQLite and checks its EXPLAIN QUERY PLAN.
+// A full scan of `contacts` or a temp B-tree sort fails the test unless the case below
+// says why it is unavoidable.
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class ContactDaoQueryPlanTest {
+    private lateinit var database: ContactDatabase
+    private lateinit var dao: ContactDao
+    private val statements = Collections.synchronizedList(ArrayList<Pair<String, List<Any?>>>())
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext())
+            .setQueryCallback({ sql, args -> statements += sql to args }, Runnable::run)
+            .build()
+        dao = database.contactDao()
+        runBlocking {
+            dao.insertAll(
+                listOf(
+                    Contact(name = "John Kim", phoneNumber = "555-0100", group = "Work", isFavorite = true),
+                    Contact(name = "Émile Zola", phoneNumber = "+33 1 23 45 67 89", group = "Friends"),
+                    Contact(name = "Ann Lee", phoneNumber = "555-0199", lastCalledAt = 1_000L, callCount = 2)
+                )
+            )
+        }
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun listQueriesUseIndices() {
+        assertIndexed { dao.getAllContacts().first() }
+        assertIndexed { dao.getAllContactsPaged().loadFirstPage() }
+        assertIndexed { dao.loadFirstPage(20) }
+        assertIndexed { dao.getContactsByGroup("Work").first() }
+        assertIndexed { dao.getContactsByGroupPaged("Work").loadFirstPage() }
+    }
+
+    @Test
+    fun favoritesAndRecentsUseIndices() {
+        assertIndexed { dao.getFavoriteContacts().first() }
+        assertIndexed { dao.getFavoriteContactsPaged().loadFirstPage() }
+        assertIndexed { dao.loadFavorites(20) }
+        assertIndexed { dao.getRecentlyContacted(10).first() }
+        assertIndexed { dao.loadRecentlyContacted(10) }
+    }
+
+    @Test
+    fun keyLookupsUseIndices() {
+        assertIndexed { dao.getContactById(1) }
+        assertIndexed { dao.getContactsByIds(listOf(1, 2)) }
+        assertIndexed { dao.getContactSummariesByIds(listOf(1, 2)) }
+        assertIndexed { dao.getReversedDigitsByIds(listOf(1, 2)) }
+        assertIndexed { dao.findByReversedDigitsPrefix("0010555", 16) }
+        assertIndexed { dao.loadDialerSuggestions("56", 64) }
+        assertIndexed { dao.loadPhoneSuggestions("0100", 64) }
+        assertIndexed { dao.observeSectionCountsInGroup("Work").first() }
+        assertIndexed { dao.countContacts() }
+    }
+
+    @Test
+    fun keysetPagesUseThePrimaryKey() {
+        assertIndexed { dao.loadContactsAfter(0, 100) }
+        assertIndexed { dao.loadContactSummariesAfter(0, 100) }
+        assertIndexed { dao.loadDuplicateKeysAfter(0, 100) }
+        assertIndexed { dao.loadReversedDigitsAfter(0, 100) }
+    }
+
+    @Test
+    fun writesUseIndices() {
+        assertIndexed { dao.toggleFavorite(1, true) }
+        assertIndexed { dao.flipFavorite(1) }
+        assertIndexed { dao.markCalled(1, 2_000L) }
+        assertIndexed { dao.updateLocaleColumns(1, "00", 1, "555-0100") }
+        assertIndexed { dao.deleteTrigrams(1) }
+        assertIndexed { dao.deletePhoneKeys(1) }
+        assertIndexed { dao.deleteById(3) }
+    }
+
+    @Test
+    fun searchSortsOnlyMatchedRows() {
+        // The FTS index finds the rows; ranking by name-prefix hit needs a sort of just those
+        assertIndexed(allowTempBTree = true) { dao.searchContacts("jo").first() }
+        assertIndexed(allowTempBTree = true) { dao.searchContactsPaged("jo").loadFirstPage() }
+        assertIndexed(allowTempBTree = true) { dao.searchContactsInGroup("jo", "Work").first() }
+        assertIndexed(allowTempBTree = true) { dao.searchContactsInGroupPaged("jo", "Work").loadFirstPage() }
+        // Grouped per candidate contact, bounded by the postings of the query's trigrams
+        assertIndexed(allowTempBTree = true) { dao.findTrigramCandidates(listOf("joh", "ohn"), 1, 50) }
+        assertIndexed(allowTempBTree = true) { dao.findTrigramCandidatesInGroup(listOf("joh", "ohn"), "Work", 1, 50) }
+        // contact_sections holds one row per (group, section), a few hundred at most
+        assertIndexed(allowTempBTree = true) { dao.observeSectionCounts().first() }
+    }
+
+    @Test
+    fun substringFallbacksAreTheOnlyScans() {
+        // Only reached when the query has no letters or digits for FTS to match
+        assertIndexed(allowScan = true, allowTempBTree = true) { dao.searchContacts("+").first() }
+        assertIndexed(allowScan = true, allowTempBTree = true) { dao.searchContactsInGroup("+", "Work").first() }
+        // The search screen matches digits anywhere in the number, which no B-tree index covers
+        assertIndexed(allowScan = true, allowTempBTree = true) { dao.searchByPhone("0100").first() }
+    }
+
+    private fun assertIndexed(allowScan: Boolean = false, allowTempBTree: Boolean = false, block: suspend () -> Unit) {
+        statements.clear()
+        runBlocking { block() }
+        val captured = synchronized(statements) { statements.toList() }
+        val checked = captured.filter { (sql, _) -> isPlannable(sql) }
+        if (checked.isEmpty()) fail("No statement captured")
+
+        for ((sql, args) in checked) {
+            val plan = explain(sql, args)
+            val problems = plan.filter { detail ->
+                (!allowScan && FULL_SCAN.containsMatchIn(detail)) || (!allowTempBTree && detail.contains("TEMP B-TREE"))
+            }
+            if (problems.isNotEmpty()) {
+                fail("$sql\n  ${plan.joinToString("\n  ")}")
+            }
+        }
+    }
+
+    private fun explain(sql: String, args: List<Any?>): List<String> {
+        val plan = ArrayList<String>()
+        database.openHelper.readableDatabase.query(SimpleSQLiteQuery("EXPLAIN QUERY PLAN $sql", args.toTypedArray())).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) plan += cursor.getString(detail)
+        }
+        return plan
+    }
+
+    private suspend fun PagingSource<Int, Contact>.loadFirstPage() {
+        load(PagingSource.LoadParams.Refresh(key = null, loadSize = 20, placeholdersEnabled = false))
+    }
+
+    companion object {
+        // "SCAN contacts" without "USING ... INDEX"; walking an index in order is fine
+        private val FULL_SCAN = Regex("\\bSCAN (TABLE )?contacts\\b(?! USING)")
+
+        // Room's own bookkeeping and transaction statements are not ours to plan
+        private fun isPlannable(sql: String): Boolean {
+            val statement = sql.trimStart().uppercase()
+            if ("ROOM_TABLE_MODIFICATION_LOG" in statement) return false
+            return statement.startsWith("SELECT") || statement.startsWith("UPDATE") || statement.startsWith("DELETE")
+        }
+    }
+}
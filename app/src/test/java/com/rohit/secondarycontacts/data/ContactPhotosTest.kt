@@ -0,0 +1,74 @@
+package com.rohit.secondarycontacts.data
+
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class ContactPhotosTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private lateinit var database: ContactDatabase
+    private lateinit var scope: CoroutineScope
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(context).build()
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+        dir = File(context.filesDir, "photos").apply { deleteRecursively(); mkdirs() }
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        database.close()
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun sweepRemovesOnlyOldUnreferencedFiles() = runBlocking {
+        val dao = database.contactDao()
+        val kept = photo("kept.jpg", OLD)
+        val deleted = photo("deleted.png", OLD)
+        val merged = photo("merged.jpg", OLD)
+        val fresh = photo("fresh.jpg", NOW + 1)
+        dao.insert(Contact(name = "Kim", phoneNumber = "5550100", photoUri = Uri.fromFile(kept).toString()))
+        dao.insert(Contact(name = "Lee", phoneNumber = "5550101", photoUri = Uri.fromFile(deleted).toString()))
+        dao.deleteById(dao.loadContactsAfter(0, 10).single { it.name == "Lee" }.id)
+
+        val removed = ContactPhotos(database, dir, scope).sweep(olderThan = NOW)
+
+        assertEquals(2, removed)
+        assertTrue(kept.exists())
+        assertFalse(deleted.exists())
+        assertFalse(merged.exists())
+        // May belong to an import that has not inserted its rows yet
+        assertTrue(fresh.exists())
+    }
+
+    private fun photo(name: String, modified: Long) = File(dir, name).apply {
+        writeBytes(byteArrayOf(1, 2, 3))
+        setLastModified(modified)
+    }
+
+    companion object {
+        private const val NOW = 1_700_000_000_000L
+        private const val OLD = NOW - 60_000
+    }
+}
@@ -0,0 +1,83 @@
+package com.rohit.secondarycontacts.data
+
+import android.content.Context
+import android.util.AtomicFile
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.DataOutputStream
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+class ContactSnapshotStoreTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val scope = CoroutineScope(Dispatchers.Unconfined)
+    private val snapshotFile = File(context.filesDir, "contacts.snapshot")
+
+    private val snapshot = ContactSnapshot(
+        favorites = listOf(Contact(id = 1, name = "Émile Zola", phoneNumber = "+33 1 23 45 67 89", isFavorite = true, section = 4)),
+        recents = listOf(Contact(id = 2, name = "Ann Lee", phoneNumber = "555-0199", lastCalledAt = 1_000L, callCount = 2, group = "Work")),
+        firstPage = listOf(Contact(id = 3, name = "John Kim", phoneNumber = "555-0100", photoUri = "file:///photo.jpg", displayNumber = "555-0100"))
+    )
+
+    @Test
+    fun roundTrips() {
+        ContactSnapshotStore(context, scope).write(snapshot)
+
+        assertEquals(snapshot, ContactSnapshotStore(context, scope).initial)
+    }
+
+    @Test
+    fun missingFileIsEmpty() {
+        assertEquals(ContactSnapshot.EMPTY, ContactSnapshotStore(context, scope).initial)
+    }
+
+    // A flipped length must fail the read, not allocate gigabytes and crash every cold start
+    @Test
+    fun corruptLengthsAreEmpty() {
+        for (length in listOf(Int.MAX_VALUE, -1, 1_000_000)) {
+            AtomicFile(snapshotFile).let { file ->
+                val stream = file.startWrite()
+                DataOutputStream(stream).run {
+                    writeInt(0x43534E50)
+                    writeInt(1)
+                    writeInt(1)
+                    writeInt(7)
+                    writeBoolean(false)
+                    writeLong(-1L)
+                    writeInt(0)
+                    writeInt(0)
+                    writeInt(length)
+                    // Enough trailing bytes that only the string length is wrong
+                    write(ByteArray(64))
+                    flush()
+                }
+                file.finishWrite(stream)
+            }
+
+            assertEquals(ContactSnapshot.EMPTY, ContactSnapshotStore(context, scope).initial)
+        }
+    }
+
+    @Test
+    fun corruptCountIsEmpty() {
+        snapshotFile.writeBytes(byteArrayOf(0x43, 0x53, 0x4E, 0x50, 0, 0, 0, 1, 0x7F, -1, -1, -1))
+
+        assertEquals(ContactSnapshot.EMPTY, ContactSnapshotStore(context, scope).initial)
+    }
+
+    // The process died mid-write: the last complete snapshot is still what a cold start sees
+    @Test
+    fun interruptedWriteKeepsThePreviousSnapshot() {
+        ContactSnapshotStore(context, scope).write(snapshot)
+        val stream = AtomicFile(snapshotFile).startWrite()
+        stream.write(byteArrayOf(1, 2, 3))
+        stream.flush()
+
+        assertEquals(snapshot, ContactSnapshotStore(context, scope).initial)
+    }
+}
@@ -0,0 +1,179 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.util.Collections
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class ContactWriteQueueTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private lateinit var database: ContactDatabase
+    private lateinit var dao: ContactDao
+    private lateinit var scope: CoroutineScope
+    private lateinit var queue: ContactWriteQueue
+    private val statements = Collections.synchronizedList(ArrayList<String>())
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext())
+            .setQueryCallback({ sql, _ -> statements += sql }, Runnable::run)
+            .build()
+        dao = database.contactDao()
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+        queue = ContactWriteQueue(database, scope)
+        runBlocking {
+            dao.insertAll((1..10).map { Contact(name = "Contact $it", phoneNumber = "555-01$it") })
+        }
+        statements.clear()
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        database.close()
+    }
+
+    @Test
+    fun favoriteToggledTwiceIsANoOp() = runBlocking {
+        listOf(queue.toggleFavorite(1), queue.toggleFavorite(1)).awaitAll()
+
+        assertFalse(dao.getContactById(1)!!.isFavorite)
+        assertTrue(statements.none { it.contains("isFavorite = NOT isFavorite") })
+    }
+
+    @Test
+    fun oddNumberOfTogglesFlipsOnce() = runBlocking {
+        listOf(queue.toggleFavorite(1), queue.toggleFavorite(1), queue.toggleFavorite(1)).awaitAll()
+
+        assertTrue(dao.getContactById(1)!!.isFavorite)
+        assertEquals(1, statements.count { it.contains("isFavorite = NOT isFavorite") })
+    }
+
+    @Test
+    fun callsCollapseIntoOneUpdateWithTheLatestTime() = runBlocking {
+        listOf(queue.markCalled(2, 3_000L), queue.markCalled(2, 1_000L), queue.markCalled(2, 2_000L)).awaitAll()
+
+        val contact = dao.getContactById(2)!!
+        assertEquals(3, contact.callCount)
+        assertEquals(3_000L, contact.lastCalledAt)
+        assertEquals(1, statements.count { it.startsWith("UPDATE contacts SET lastCalledAt") })
+    }
+
+    @Test
+    fun updateReplacesEarlierOpsAndLaterOpsApplyOnTop() = runBlocking {
+        val original = dao.getContactById(3)!!
+        listOf(
+            queue.toggleFavorite(3),
+            queue.update(original.copy(name = "Renamed")),
+            queue.markCalled(3, 5_000L)
+        ).awaitAll()
+
+        val contact = dao.getContactById(3)!!
+        assertEquals("Renamed", contact.name)
+        assertFalse(contact.isFavorite)
+        assertEquals(1, contact.callCount)
+    }
+
+    @Test
+    fun deleteDropsEverythingQueuedAfterIt() = runBlocking {
+        listOf(queue.delete(4), queue.toggleFavorite(4), queue.markCalled(4, 1_000L)).awaitAll()
+
+        assertNull(dao.getContactById(4))
+        assertTrue(statements.none { it.startsWith("UPDATE") })
+    }
+
+    @Test
+    fun burstCommitsInOneTransaction() = runBlocking {
+        (1..10).map { queue.toggleFavorite(it) }.awaitAll()
+
+        assertTrue((1..10).all { dao.getContactById(it)!!.isFavorite })
+        assertEquals(1, topLevelTransactions())
+    }
+
+    @Test
+    fun ackMeansCommitted() = runBlocking {
+        queue.markCalled(5, 1_000L).await()
+
+        assertEquals(1, dao.getContactById(5)!!.callCount)
+    }
+
+    // The same mixed toggle/markCalled/update ops through the queue and as one DAO call each,
+    // on the same database
+    @Category(Benchmark::class)
+    @Test
+    fun queueOutrunsPerOpDaoCalls() = runBlocking {
+        dao.insertAll((11..BENCH_CONTACTS).map { Contact(name = "Contact $it", phoneNumber = "555-$it") })
+        val contacts = dao.loadContactsAfter(0, BENCH_CONTACTS)
+        val ops = List(BENCH_OPS) { i ->
+            val contact = contacts[(i * 7) % contacts.size]
+            when (i % 3) {
+                0 -> ContactWriteQueue.Op.ToggleFavorite(contact.id)
+                1 -> ContactWriteQueue.Op.MarkCalled(contact.id, 1_000L + i)
+                else -> ContactWriteQueue.Op.Update(contact.copy(name = "${contact.name} $i"))
+            }
+        }
+        suspend fun queued() = ops.map { queue.enqueue(it) }.awaitAll()
+        suspend fun direct() = ops.forEach { op ->
+            when (op) {
+                is ContactWriteQueue.Op.ToggleFavorite -> dao.flipFavorite(op.contactId)
+                is ContactWriteQueue.Op.MarkCalled -> dao.markCalled(op.contactId, op.timestamp, 1)
+                is ContactWriteQueue.Op.Update -> dao.update(op.contact)
+                is ContactWriteQueue.Op.Delete -> dao.deleteById(op.contactId)
+            }
+        }
+        queued()
+        direct()
+
+        var start = System.nanoTime()
+        queued()
+        val queueMillis = (System.nanoTime() - start) / 1_000_000
+        start = System.nanoTime()
+        direct()
+        val directMillis = (System.nanoTime() - start) / 1_000_000
+        report.record("%d ops: queue %d ms, per-op DAO calls %d ms".format(BENCH_OPS, queueMillis, directMillis))
+
+        assertTrue("queue ${queueMillis}ms vs direct ${directMillis}ms", queueMillis < directMillis)
+    }
+
+    // Write transactions that actually commit: DAO writes nest inside the queue's one, and
+    // the invalidation tracker's deferred read transactions are not counted
+    private fun topLevelTransactions(): Int {
+        var depth = 0
+        var count = 0
+        for (sql in statements.toList()) {
+            when {
+                sql.startsWith("BEGIN") -> {
+                    if (depth == 0 && sql.startsWith("BEGIN EXCLUSIVE")) count++
+                    depth++
+                }
+                sql.startsWith("END TRANSACTION") -> depth--
+            }
+        }
+        return count
+    }
+
+    companion object {
+        private const val BENCH_CONTACTS = 1_000
+        private const val BENCH_OPS = 6_000
+    }
+}
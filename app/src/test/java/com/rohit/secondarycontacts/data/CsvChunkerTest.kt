@@ -0,0 +1,141 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import java.io.File
+import java.io.RandomAccessFile
+import java.io.StringReader
+import java.nio.channels.FileChannel
+import java.util.concurrent.Executors
+
+// Parsing every range on its own must give exactly the records of parsing the whole file
+class CsvChunkerTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    @Test
+    fun lineFeedFiles() = assertSplitsLikeTheReader("Name,Phone\nJohn,1\nAnn,2\nMary,3\n")
+
+    @Test
+    fun carriageReturnOnlyFiles() {
+        val text = "Name,Phone\rJohn,1\rAnn,2\rMary,3\r"
+        assertSplitsLikeTheReader(text)
+        assertEquals(3, parseRanges(text, 1).size)
+    }
+
+    @Test
+    fun crLfFilesDoNotStartRangesWithALineFeed() {
+        val text = "Name,Phone\r\nJohn,1\r\nAnn,2\r\n"
+        assertSplitsLikeTheReader(text)
+        withFile(text) { file ->
+            RandomAccessFile(file, "r").use { raf ->
+                val bytes = text.toByteArray()
+                for (range in CsvChunker.split(raf.channel, 1)) assertTrue(bytes[range.first.toInt()] != '\n'.code.toByte())
+            }
+        }
+    }
+
+    @Test
+    fun quotedLineBreaksStayInOneRange() =
+        assertSplitsLikeTheReader("Name,Phone\n\"Ann\nLee\",\"1\r\n2\"\n\"x,\"\"y\"\"\",3\nJohn,4")
+
+    // 5'10" is an unquoted field: its quote must not flip the chunker into quoted mode
+    @Test
+    fun strayQuotesInsideUnquotedFieldsAreLiteral() {
+        val text = "Name,Note\nJohn,5'10\"\nAnn,\"multi\nline\"\nMary,x\"y\nBob,1\n"
+        assertSplitsLikeTheReader(text)
+        assertEquals(4, parseRanges(text, 1).size)
+    }
+
+    @Test
+    fun generatedBookAtManyChunkSizes() {
+        val names = SyntheticNames(seed = 5)
+        val text = buildString {
+            append("Name,PhoneNumber,Group,IsFavorite\r\n")
+            repeat(500) { i ->
+                when (i % 4) {
+                    0 -> append('"').append(names.next()).append("\",\"555 ").append(i).append("\",Work,0\r\n")
+                    1 -> append(names.next()).append(",5'1").append(i).append("\",,1\n")
+                    2 -> append('"').append(names.next()).append("\nsecond line\",").append(i).append(",\"a,b\",0\r")
+                    else -> append("Émile ").append(i).append(",").append(i).append(",Friends,0\n")
+                }
+            }
+        }
+        for (target in listOf(1L, 7L, 64L, 1000L, 100_000L)) assertSplitsLikeTheReader(text, target)
+    }
+
+    // Split-and-parse throughput at 1-8 workers on a 200k-row file, the CPU side of
+    // ContactImporter.importCsvParallel; the speedup depends on the machine, so only the
+    // results are asserted
+    @Category(Benchmark::class)
+    @Test
+    fun parallelParseScaling() {
+        val names = SyntheticNames(seed = 9)
+        val text = buildString {
+            append("Name,PhoneNumber,Group,IsFavorite\n")
+            repeat(200_000) { i -> append('"').append(names.next()).append("\",\"+1 555 ").append(1_000_000 + i).append("\",Work,0\n") }
+        }
+        withFile(text) { file ->
+            RandomAccessFile(file, "r").use { raf ->
+                parseInParallel(raf.channel, 1)
+                for (workers in listOf(1, 2, 4, 8)) {
+                    val start = System.nanoTime()
+                    val rows = parseInParallel(raf.channel, workers)
+                    report.record("CsvChunker: $workers workers, ${(System.nanoTime() - start) / 1_000_000} ms")
+                    assertEquals(200_000, rows)
+                }
+            }
+        }
+    }
+
+    private fun parseInParallel(channel: FileChannel, workers: Int): Int {
+        val pool = Executors.newFixedThreadPool(workers)
+        try {
+            return CsvChunker.split(channel, 1L shl 20).map { range ->
+                pool.submit<Int> {
+                    val mapped = channel.map(FileChannel.MapMode.READ_ONLY, range.first, range.last - range.first + 1)
+                    val csv = CsvReader(StringReader(Charsets.UTF_8.decode(mapped).toString()))
+                    var count = 0
+                    while (csv.nextRecord()) count++
+                    count
+                }
+            }.sumOf { it.get() }
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    private fun assertSplitsLikeTheReader(text: String, target: Long = 1) {
+        val whole = parse(text).drop(1)
+        assertEquals("target $target", whole, parseRanges(text, target))
+    }
+
+    private fun parseRanges(text: String, target: Long): List<List<String>> = withFile(text) { file ->
+        val bytes = file.readBytes()
+        RandomAccessFile(file, "r").use { raf ->
+            CsvChunker.split(raf.channel, target).flatMap { range ->
+                parse(String(bytes, range.first.toInt(), (range.last - range.first + 1).toInt(), Charsets.UTF_8))
+            }
+        }
+    }
+
+    private fun parse(text: String): List<List<String>> {
+        val csv = CsvReader(StringReader(text))
+        val records = ArrayList<List<String>>()
+        while (csv.nextRecord()) if (!csv.isBlank()) records += List(csv.fieldCount) { csv.field(it) }
+        return records
+    }
+
+    private fun <T> withFile(text: String, block: (File) -> T): T {
+        val file = File.createTempFile("chunker", ".csv")
+        try {
+            file.writeText(text)
+            return block(file)
+        } finally {
+            file.delete()
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class DuplicateDetectorTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private lateinit var database: ContactDatabase
+    private lateinit var dao: ContactDao
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext()).build()
+        dao = database.contactDao()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun groupsBySharedNumberAndBySameName() = runBlocking {
+        dao.insertAll(
+            listOf(
+                Contact(name = "John Kim", phoneNumber = "+1 202 555 0100"),
+                Contact(name = "Johnny K", phoneNumber = "(202) 555-0100"),
+                Contact(name = "Doe, Jane", phoneNumber = "555-0111"),
+                Contact(name = "jane doe", phoneNumber = "555-0199"),
+                Contact(name = "Someone Else", phoneNumber = "555-0123")
+            )
+        )
+
+        val groups = DuplicateDetector(database).findGroups().map { it.contactIds }
+
+        assertEquals(2, groups.size)
+        assertTrue(listOf(1, 2) in groups)
+        assertTrue(listOf(3, 4) in groups)
+    }
+
+    @Test
+    fun numbersDifferingOnlyByPrefixAreTheSame() {
+        assertTrue(DuplicateDetector.sameNumber(listOf("+1 202 555 0100", "202-555-0100", "")))
+        assertFalse(DuplicateDetector.sameNumber(listOf("555-0111", "555-0199")))
+        assertFalse(DuplicateDetector.sameNumber(listOf("+1 202 555 0100", "0100")))
+    }
+
+    @Test
+    fun mergeFoldsRowsWithTheSameNumber() = runBlocking {
+        dao.insertAll(
+            listOf(
+                Contact(name = "John Kim", phoneNumber = "202-555-0100", callCount = 3, lastCalledAt = 1_000L),
+                Contact(name = "John Kim", phoneNumber = "+1 202 555 0100", isFavorite = true, group = "Work", callCount = 2, lastCalledAt = 5_000L)
+            )
+        )
+
+        val merged = dao.mergeContacts(1, listOf(2))
+
+        assertNotNull(merged)
+        assertNull(dao.getContactById(2))
+        val kept = dao.getContactById(1)!!
+        assertEquals("+1 202 555 0100", kept.phoneNumber)
+        assertTrue(kept.isFavorite)
+        assertEquals("Work", kept.group)
+        assertEquals(5, kept.callCount)
+        assertEquals(5_000L, kept.lastCalledAt)
+    }
+
+    // Same name, different numbers: merging would have to delete one of them
+    @Test
+    fun mergeRefusesRowsWithDifferentNumbers() = runBlocking {
+        dao.insertAll(
+            listOf(
+                Contact(name = "John Kim", phoneNumber = "555-0111"),
+                Contact(name = "John Kim", phoneNumber = "555-0199")
+            )
+        )
+
+        assertNull(dao.mergeContacts(1, listOf(2)))
+        assertEquals("555-0111", dao.getContactById(1)!!.phoneNumber)
+        assertEquals("555-0199", dao.getContactById(2)!!.phoneNumber)
+
+        val match = DuplicateMatch(listOf(dao.getContactById(1)!!, dao.getContactById(2)!!), 0.4)
+        assertFalse(match.mergeable)
+    }
+
+    // Every DUPLICATE_EVERY-th row re-enters the row before it with the number written without
+    // its country code, so the book holds exactly ROWS / DUPLICATE_EVERY pairs
+    @Category(Benchmark::class)
+    @Test
+    fun findAndMergeOn500kRows() = runBlocking {
+        val names = SyntheticNames(seed = 11)
+        var previous = Contact(name = "", phoneNumber = "")
+        (0 until ROWS).chunked(5_000).forEach { chunk ->
+            val rows = chunk.map { i ->
+                previous = if (i % DUPLICATE_EVERY == DUPLICATE_EVERY - 1) {
+                    previous.copy(name = previous.name.lowercase(), phoneNumber = previous.phoneNumber.removePrefix("+1 "))
+                } else {
+                    Contact(name = "${names.next()} $i", phoneNumber = "+1 555 %07d".format(i))
+                }
+                previous.withDerivedColumns()
+            }
+            // Only the contacts table is read; skipping the trigram and phone-key rows keeps seeding short
+            dao.insertAllEntities(rows)
+        }
+
+        var start = System.nanoTime()
+        val groups = DuplicateDetector(database).findGroups()
+        val findMillis = (System.nanoTime() - start) / 1_000_000
+        start = System.nanoTime()
+        val merged = groups.count { dao.mergeContacts(it.contactIds.first(), it.contactIds.drop(1)) != null }
+        val mergeMillis = (System.nanoTime() - start) / 1_000_000
+        report.record("findGroups %d ms, %d merges in %d ms (%.2f ms each) over %d rows".format(findMillis, merged, mergeMillis, mergeMillis.toDouble() / merged, ROWS))
+
+        assertEquals(ROWS / DUPLICATE_EVERY, groups.size)
+        assertTrue(groups.all { it.contactIds.size == 2 })
+        assertEquals(groups.size, merged)
+        assertEquals(ROWS - merged, dao.countContacts())
+    }
+
+    companion object {
+        private const val ROWS = 500_000
+        private const val DUPLICATE_EVERY = 20
+    }
+}
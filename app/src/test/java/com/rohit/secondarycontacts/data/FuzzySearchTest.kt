@@ -0,0 +1,128 @@
+package com.rohit.secondarycontacts.data
+
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class FuzzySearchTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private lateinit var database: ContactDatabase
+    private lateinit var scope: CoroutineScope
+    private lateinit var fuzzySearch: FuzzySearch
+
+    @Before
+    fun setUp() {
+        database = ContactDatabase.inMemoryBuilder(ApplicationProvider.getApplicationContext()).build()
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+        fuzzySearch = FuzzySearch(database, ContactChangeFeed(database, scope), scope)
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        database.close()
+    }
+
+    @Test
+    fun toleratesTyposAndRanksCloserNamesFirst() = runBlocking {
+        database.contactDao().insertAll(
+            listOf(
+                Contact(name = "John Smith", phoneNumber = "1"),
+                Contact(name = "Jon Smyth", phoneNumber = "2"),
+                Contact(name = "Mary Jones", phoneNumber = "3")
+            )
+        )
+
+        val names = fuzzySearch.search("jhon smith").map { it.name }
+
+        assertEquals("John Smith", names.first())
+        assertTrue("Mary Jones" !in names)
+    }
+
+    // More exact matches outside the group than the result limit must not hide the group's own
+    @Test
+    fun groupIsAppliedBeforeTheResultLimit() = runBlocking {
+        val dao = database.contactDao()
+        dao.insertAll((1..300).map { Contact(name = "Smith $it", phoneNumber = "$it", group = "Work") })
+        dao.insertAll(listOf(Contact(name = "Smyth Family", phoneNumber = "999", group = "Family")))
+
+        val results = fuzzySearch.search("smith", group = "Family")
+
+        assertEquals(listOf("Smyth Family"), results.map { it.name })
+    }
+
+    // The first search is answered by the trigram table while the index builds; once built,
+    // the index gives the same results and takes in later writes
+    @Test
+    fun indexAnswersLikeTheTableAndFollowsWrites() = runBlocking {
+        val dao = database.contactDao()
+        dao.insertAll(
+            listOf(
+                Contact(name = "John Smith", phoneNumber = "1"),
+                Contact(name = "Jon Smyth", phoneNumber = "2", group = "Work"),
+                Contact(name = "Mary Jones", phoneNumber = "3")
+            )
+        )
+        val fromTable = fuzzySearch.search("jhon smith").map { it.name }
+        withTimeout(5_000) { fuzzySearch.ready.first { it } }
+
+        assertEquals(fromTable, fuzzySearch.search("jhon smith").map { it.name })
+        assertEquals(listOf("Jon Smyth"), fuzzySearch.search("jhon smith", group = "Work").map { it.name })
+
+        // Batches are applied in order, so the delete is in once the insert shows up
+        dao.deleteById(1)
+        dao.insert(Contact(name = "Priya Patel", phoneNumber = "4"))
+        withTimeout(5_000) {
+            while (fuzzySearch.search("pstel").isEmpty()) delay(10)
+        }
+        assertTrue("John Smith" !in fuzzySearch.search("jhon smith").map { it.name })
+    }
+
+    // 3-5 character queries with a typo, whose trigrams each sit in thousands of the names
+    @Category(Benchmark::class)
+    @Test
+    fun shortTypoQueriesOn100kNames() = runBlocking {
+        val names = SyntheticNames(seed = 3)
+        (1..BOOK_SIZE).chunked(5_000).forEach { chunk ->
+            database.contactDao().insertAll(chunk.map { Contact(name = names.next(), phoneNumber = "555${1_000_000 + it}") })
+        }
+        fuzzySearch.search("warm up")
+        withTimeout(30_000) { fuzzySearch.ready.first { it } }
+        repeat(WARMUP) { TrigramIndexTest.TYPO_QUERIES.forEach { fuzzySearch.search(it) } }
+
+        val start = System.nanoTime()
+        var results = 0
+        repeat(ROUNDS) { TrigramIndexTest.TYPO_QUERIES.forEach { results += fuzzySearch.search(it).size } }
+        val millis = (System.nanoTime() - start) / 1e6 / (ROUNDS * TrigramIndexTest.TYPO_QUERIES.size)
+        report.record("%.2f ms per query over %d names".format(millis, BOOK_SIZE))
+
+        assertTrue(results > 0)
+        assertTrue("$millis ms per query", millis < 5.0)
+    }
+
+    companion object {
+        private const val BOOK_SIZE = 100_000
+        private const val WARMUP = 20
+        private const val ROUNDS = 20
+    }
+}
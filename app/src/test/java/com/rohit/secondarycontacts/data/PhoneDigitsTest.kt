@@ -0,0 +1,26 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PhoneDigitsTest {
+
+    @Test
+    fun runKeysStartAtEachDigitGroup() {
+        assertEquals(setOf("919876543210", "9876543210", "43210"), PhoneDigits.runKeys("+91 98765 43210"))
+        assertEquals(setOf("5550100", "0100"), PhoneDigits.runKeys("555-0100"))
+        assertEquals(emptySet<String>(), PhoneDigits.runKeys("n/a"))
+    }
+
+    @Test
+    fun dialedDigitsMatchRunStartsAndTheEnd() {
+        assertTrue(PhoneDigits.matchesDialed("555-0100", "555"))
+        assertTrue(PhoneDigits.matchesDialed("555-0100", "5550"))
+        assertTrue(PhoneDigits.matchesDialed("555-0100", "010"))
+        assertTrue(PhoneDigits.matchesDialed("+91 98765 43210", "210"))
+        assertFalse(PhoneDigits.matchesDialed("555-0100", "550"))
+        assertFalse(PhoneDigits.matchesDialed("555-0100", ""))
+    }
+}
@@ -0,0 +1,85 @@
+package com.rohit.secondarycontacts.data
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.SQLiteMode
+import java.util.Locale
+
+@RunWith(RobolectricTestRunner::class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+class SortKeyRefresherTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private lateinit var database: ContactDatabase
+    private lateinit var scope: CoroutineScope
+
+    @Before
+    fun setUp() {
+        Locale.setDefault(Locale.US)
+        PhoneFormatter.regionOverride = null
+        database = ContactDatabase.inMemoryBuilder(context).build()
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        database.close()
+        PhoneFormatter.regionOverride = null
+    }
+
+    @Test
+    fun regionChangeRederivesStoredDisplayNumbers() = runBlocking {
+        val dao = database.contactDao()
+        dao.insert(Contact(name = "London office", phoneNumber = "02079460000"))
+        val refresher = SortKeyRefresher(context, database, scope)
+        refresher.start()
+        val usDisplay = dao.getContactById(1)!!.displayNumber
+
+        refresher.setPhoneRegion("gb")
+        awaitRefresh()
+
+        val contact = dao.getContactById(1)!!
+        assertEquals("GB", refresher.phoneRegion.value)
+        assertEquals(PhoneFormatter.format(contact.phoneNumber), contact.displayNumber)
+        assertNotEquals(usDisplay, contact.displayNumber)
+    }
+
+    @Test
+    fun regionIsPersistedAndAppliedOnStart() {
+        SortKeyRefresher(context, database, scope).setPhoneRegion("IN")
+        PhoneFormatter.regionOverride = null
+
+        val restarted = SortKeyRefresher(context, database, scope)
+        restarted.start()
+
+        assertEquals("IN", restarted.phoneRegion.value)
+        assertEquals("IN", PhoneFormatter.region)
+
+        restarted.setPhoneRegion(" ")
+        assertNull(restarted.phoneRegion.value)
+        assertEquals("US", PhoneFormatter.region)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsCodesThatAreNotRegions() {
+        SortKeyRefresher(context, database, scope).setPhoneRegion("India")
+    }
+
+    private suspend fun awaitRefresh() {
+        scope.coroutineContext[Job]!!.children.forEach { it.join() }
+    }
+}
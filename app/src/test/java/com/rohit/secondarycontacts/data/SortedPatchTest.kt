@@ -0,0 +1,90 @@
+package com.rohit.secondarycontacts.data
+
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.toPersistentList
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import java.lang.management.ManagementFactory
+
+class SortedPatchTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    private val byName = compareBy<Contact> { it.name }.thenBy { it.id }
+
+    @Test
+    fun replacesRowsInSortedPosition() {
+        val current = contacts(1..5)
+        val renamed = current[0].copy(name = "Contact 9")
+
+        val patched = SortedPatch.apply(current, setOf(1, 3), listOf(renamed), byName)
+
+        assertEquals(listOf(2, 4, 5, 1), patched.map { it.id })
+    }
+
+    @Test
+    fun keepsAtMostLimitRows() {
+        val current = contacts(2..4)
+        val first = Contact(id = 1, name = "Contact 00001", phoneNumber = "1")
+
+        val patched = SortedPatch.apply(current, setOf(1), listOf(first), byName, limit = 3)
+
+        assertEquals(listOf(1, 2, 3), patched.map { it.id })
+    }
+
+    // Compose skips list items whose Contact is the same instance as before, so a patch must
+    // hand back every untouched row unchanged
+    @Test
+    fun untouchedRowsAreTheSameInstances() {
+        val current = contacts(1..1_000)
+        val changed = current[500].copy(isFavorite = true)
+
+        val patched = SortedPatch.apply(current, setOf(changed.id), listOf(changed), byName)
+
+        assertEquals(current.size, patched.size)
+        for (i in current.indices) {
+            if (current[i].id == changed.id) assertSame(changed, patched[i]) else assertSame(current[i], patched[i])
+        }
+    }
+
+    // One changed row in a large list, against re-filtering and re-sorting a fresh list as the
+    // flows did before
+    @Category(Benchmark::class)
+    @Test
+    fun patchAllocatesLessThanRebuilding() {
+        val current = contacts(1..5_000)
+        val changed = current[2_500].copy(callCount = 1)
+        val ids = setOf(changed.id)
+        val patch = { SortedPatch.apply(current, ids, listOf(changed), byName) }
+        val rebuild = { (current.filter { it.id !in ids } + changed).sortedWith(byName).toPersistentList() }
+        repeat(WARMUP) {
+            patch()
+            rebuild()
+        }
+
+        val patchBytes = allocatedBy(patch)
+        val rebuildBytes = allocatedBy(rebuild)
+        report.record("SortedPatch: patch ${patchBytes / ITERATIONS} B, rebuild ${rebuildBytes / ITERATIONS} B per update of 5000 rows")
+
+        assertTrue("patch $patchBytes vs rebuild $rebuildBytes", patchBytes * 2 < rebuildBytes)
+    }
+
+    private fun contacts(ids: IntRange): PersistentList<Contact> =
+        ids.map { Contact(id = it, name = "Contact %05d".format(it), phoneNumber = "$it") }.toPersistentList()
+
+    private fun allocatedBy(work: () -> Any): Long {
+        val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val before = threads.currentThreadAllocatedBytes
+        repeat(ITERATIONS) { work() }
+        return threads.currentThreadAllocatedBytes - before
+    }
+
+    companion object {
+        private const val WARMUP = 200
+        private const val ITERATIONS = 1_000
+    }
+}
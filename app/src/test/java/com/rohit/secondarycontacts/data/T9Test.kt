@@ -0,0 +1,92 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.lang.management.ManagementFactory
+
+class T9Test {
+
+    @Test
+    fun encodesLettersAndSkipsTheRest() {
+        assertEquals("5646546", T9.encode("John Kim"))
+        assertEquals("62255", T9.encode("O'Ball-1"))
+        assertEquals("55", T9.initials("John Kim"))
+    }
+
+    @Test
+    fun accentedLatinLettersUseTheirBaseKey() {
+        assertEquals(T9.encode("Emile Zola"), T9.encode("Émile Zòla"))
+        assertEquals(T9.encode("Soren"), T9.encode("Søren"))
+        assertEquals(T9.encode("Lodz"), T9.encode("Łódź"))
+        assertEquals(T9.encode("Strase"), T9.encode("Straße"))
+    }
+
+    @Test
+    fun lettersWithoutAKeyAreSkipped() {
+        assertEquals("", T9.encode("Ωμέγα"))
+        assertEquals("", T9.encode("王伟"))
+        assertEquals("5646", T9.encode("John 王"))
+    }
+
+    @Test
+    fun matchers() {
+        assertTrue(T9.matchesPrefix("John Kim", "5646"))
+        assertTrue(T9.matchesWordStart("John Kim", "546"))
+        assertFalse(T9.matchesWordStart("John Kim", "5646"))
+        assertTrue(T9.matchesInitials("John Smith", "57"))
+        assertTrue(T9.matchesPrefix("Émile", "3645"))
+        assertTrue(T9.matchesSubstring("Alexander", "3926"))
+        assertTrue(T9.matchesSubstring("John Kim", "6546"))
+        assertFalse(T9.matchesSubstring("John Kim", "999"))
+    }
+
+    @Test
+    fun matchedRangesFollowTheMatchTier() {
+        assertEquals(listOf(0..2), T9.matchedRanges("Émile Zola", "364"))
+        assertEquals(listOf(6..9), T9.matchedRanges("Émile Zola", "9652"))
+        // Word start beats an earlier mid-word occurrence of the same digits
+        assertEquals(listOf(6..8), T9.matchedRanges("Hanna Anna", "266"))
+        assertEquals(listOf(0..0, 5..5), T9.matchedRanges("John Kim", "55"))
+        assertEquals(listOf(2..5), T9.matchedRanges("Alexander", "3926"))
+        assertEquals(listOf(0..3), T9.matchedRanges("O'Neil", "663"))
+        assertEquals(emptyList<IntRange>(), T9.matchedRanges("John Kim", "999"))
+    }
+
+    // The buffer variants and matchers run per contact per keystroke, so they must not
+    // allocate; encode(String) and initials(String) allocate their result by design
+    @Test
+    fun bufferEncodingAndMatchingAllocateNothing() {
+        val names = arrayOf("John Kim", "Émile Zola", "Mary-Ann O'Neil", "Priya Sharma Reddy")
+        val out = CharArray(64)
+        val digits = "56"
+        var sink = 0
+        val work = {
+            for (name in names) {
+                sink += T9.encode(name, out)
+                sink += T9.encodeInitials(name, out)
+                if (T9.matchesPrefix(name, digits)) sink++
+                if (T9.matchesWordStart(name, digits)) sink++
+                if (T9.matchesInitials(name, digits)) sink++
+                if (T9.matchesSubstring(name, digits)) sink++
+            }
+        }
+        repeat(WARMUP) { work() }
+
+        val before = allocatedBytes()
+        repeat(ITERATIONS) { work() }
+        val allocated = allocatedBytes() - before
+
+        assertTrue(sink > 0)
+        assertTrue("$allocated bytes over $ITERATIONS iterations", allocated < ITERATIONS)
+    }
+
+    private fun allocatedBytes(): Long =
+        (ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean).currentThreadAllocatedBytes
+
+    companion object {
+        private const val WARMUP = 20_000
+        private const val ITERATIONS = 100_000
+    }
+}
@@ -0,0 +1,80 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import kotlin.random.Random
+
+// Retained heap of a fully built trie at dialer-scale book sizes. The names themselves are
+// counted, since the trie keeps them to re-derive keys on removal.
+@Category(Benchmark::class)
+class T9TrieMemoryTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    @Test
+    fun heapPerContactStaysBounded() {
+        for (count in listOf(10_000, 100_000, 1_000_000)) {
+            val before = usedHeap()
+            val trie = build(count)
+            val retained = usedHeap() - before
+            val perContact = retained / count
+            report.record("T9Trie: $count contacts, ${retained / (1024 * 1024)} MB, $perContact bytes/contact")
+
+            assertEquals(count, trie.size)
+            assertTrue("$perContact bytes/contact at $count", perContact < MAX_BYTES_PER_CONTACT)
+        }
+    }
+
+    private fun build(count: Int): T9Trie {
+        val trie = T9Trie()
+        val names = SyntheticNames(seed = count.toLong())
+        for (id in 1..count) trie.put(ContactSummary(id, names.next(), null, 0))
+        return trie
+    }
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) {
+            System.gc()
+            Thread.sleep(50)
+        }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    companion object {
+        private const val MAX_BYTES_PER_CONTACT = 400L
+    }
+}
+
+// Deterministic "First [M.] Last" names drawn from common first and last names, with a numeric
+// suffix on some so that large books are not all repeats
+class SyntheticNames(seed: Long) {
+    private val random = Random(seed)
+
+    fun next(): String {
+        val first = FIRST[random.nextInt(FIRST.size)]
+        val last = LAST[random.nextInt(LAST.size)]
+        val middle = if (random.nextInt(4) == 0) " ${'A' + random.nextInt(26)}." else ""
+        val suffix = if (random.nextInt(3) == 0) " ${random.nextInt(1000)}" else ""
+        return "$first$middle $last$suffix"
+    }
+
+    companion object {
+        private val FIRST = listOf(
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth",
+            "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Priya", "Rohit", "Ananya", "Arjun", "Wei", "Mei", "Hiroshi", "Yuki", "Omar", "Fatima",
+            "Lucas", "Sofia", "Mateo", "Valentina", "Noah", "Emma", "Liam", "Olivia", "Ethan", "Ava"
+        )
+        private val LAST = listOf(
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Sharma", "Patel", "Reddy", "Kumar", "Chen", "Wang", "Tanaka", "Sato", "Khan", "Ali",
+            "Kim", "Park", "Nguyen", "Tran", "Silva", "Santos", "Muller", "Schmidt", "Rossi", "Dubois"
+        )
+    }
+}
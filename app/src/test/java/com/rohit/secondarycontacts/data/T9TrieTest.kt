@@ -0,0 +1,151 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import kotlin.random.Random
+
+class T9TrieTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    @Test
+    fun findsPrefixWordStartAndInitials() {
+        val trie = T9Trie()
+        trie.put(ContactSummary(1, "John Kim", null, 0))
+        trie.put(ContactSummary(2, "Kim Lee", null, 0))
+
+        assertEquals(listOf(2 to T9Trie.MatchType.PREFIX, 1 to T9Trie.MatchType.WORD_START), matches(trie, "546"))
+        assertEquals(listOf(1 to T9Trie.MatchType.INITIALS, 2 to T9Trie.MatchType.INITIALS), matches(trie, "55"))
+        assertEquals(emptyList<Pair<Int, T9Trie.MatchType>>(), matches(trie, "999"))
+    }
+
+    @Test
+    fun frecencyOrdersWithinATierButNeverAcrossTiers() {
+        val trie = T9Trie()
+        trie.put(ContactSummary(1, "Kim Lee", null, 0))
+        trie.put(ContactSummary(2, "John Kim", NOW, 500))
+        trie.put(ContactSummary(3, "Kim Park", NOW - DAY, 3))
+
+        assertEquals(listOf(3, 1, 2), matches(trie, "546").map { it.first })
+    }
+
+    // Digits from the middle of a word still find the contact, below every indexed tier and
+    // only when those leave room
+    @Test
+    fun substringMatchesFillBelowIndexedTiers() {
+        val trie = T9Trie()
+        trie.put(ContactSummary(1, "Alexander", NOW, 50))
+        trie.put(ContactSummary(2, "Andes", null, 0))
+
+        assertEquals(listOf(2 to T9Trie.MatchType.PREFIX, 1 to T9Trie.MatchType.SUBSTRING), matches(trie, "2633"))
+        assertEquals(listOf(2 to T9Trie.MatchType.PREFIX), matches(trie, "2633", limit = 1))
+        assertEquals(listOf(1 to T9Trie.MatchType.SUBSTRING), matches(trie, "3926"))
+    }
+
+    @Test
+    fun removeAndReputUpdateResults() {
+        val trie = T9Trie()
+        trie.put(ContactSummary(1, "John Kim", null, 0))
+        trie.put(ContactSummary(1, "Mary Lee", null, 0))
+        trie.remove(1)
+
+        assertEquals(0, trie.size)
+        assertTrue(matches(trie, "5646").isEmpty())
+        assertTrue(matches(trie, "6279").isEmpty())
+    }
+
+    // Random puts, renames, calls and removals over a book large enough that the shared
+    // prefixes keep cached tops; every result must equal a brute-force ranking
+    @Test
+    fun cachedTopsMatchBruteForce() {
+        val random = Random(42)
+        val names = SyntheticNames(seed = 7)
+        val trie = T9Trie()
+        val book = HashMap<Int, ContactSummary>()
+
+        repeat(40_000) {
+            val id = 1 + random.nextInt(8_000)
+            when (random.nextInt(10)) {
+                0 -> {
+                    trie.remove(id)
+                    book.remove(id)
+                }
+                else -> {
+                    val called = random.nextInt(3) > 0
+                    val contact = ContactSummary(
+                        id,
+                        book[id]?.name?.takeIf { random.nextBoolean() } ?: names.next(),
+                        if (called) NOW - random.nextLong(60 * DAY) else null,
+                        if (called) 1 + random.nextInt(50) else 0
+                    )
+                    trie.put(contact)
+                    book[id] = contact
+                }
+            }
+        }
+
+        assertEquals(book.size, trie.size)
+        for (digits in listOf("5", "52", "56", "564", "7", "76", "2", "27", "527", "74", "6", "62")) {
+            for (limit in listOf(1, 8, 16, 40)) {
+                assertEquals("$digits limit $limit", bruteForce(book.values, digits, limit), matches(trie, digits, limit))
+            }
+        }
+    }
+
+    // Per-keystroke cost at 10k, 100k and 1M contacts: the indexed tiers cost the same at
+    // every size since each search reads one cached top. The mid-word fallback, which only runs
+    // when those come up short, scans the book and is reported alongside.
+    @Category(Benchmark::class)
+    @Test
+    fun searchCostDoesNotGrowWithTheBook() {
+        val keys = listOf("5", "56", "527", "7", "76", "2", "62", "27")
+        val perSearch = LinkedHashMap<Int, Long>()
+        for (count in listOf(10_000, 100_000, 1_000_000)) {
+            val names = SyntheticNames(seed = 3)
+            val trie = T9Trie()
+            for (id in 1..count) trie.put(ContactSummary(id, names.next(), NOW - id * 1_000L, 1 + id % 7))
+            repeat(WARMUP) { for (digits in keys) trie.search(digits, 8, NOW) }
+
+            val start = System.nanoTime()
+            repeat(ITERATIONS) { for (digits in keys) trie.search(digits, 8, NOW) }
+            perSearch[count] = (System.nanoTime() - start) / (ITERATIONS * keys.size)
+
+            repeat(SCAN_ITERATIONS) { trie.search(SPARSE_KEY, 8, NOW) }
+            val scanStart = System.nanoTime()
+            repeat(SCAN_ITERATIONS) { trie.search(SPARSE_KEY, 8, NOW) }
+            val perScan = (System.nanoTime() - scanStart) / SCAN_ITERATIONS
+            report.record("$count contacts: ${perSearch[count]!! / 1000.0} µs per indexed search, ${perScan / 1000.0} µs for a sparse key (mid-word scan below 100k)")
+        }
+
+        for ((count, nanos) in perSearch) assertTrue("$nanos ns per search at $count", nanos < 200_000)
+        val smallest = perSearch.getValue(10_000)
+        val largest = perSearch.getValue(1_000_000)
+        assertTrue("$smallest ns at 10k vs $largest ns at 1M", largest < smallest * 5 + 2_000)
+    }
+
+    private fun matches(trie: T9Trie, digits: String, limit: Int = 8) =
+        trie.search(digits, limit, NOW).map { it.contactId to it.type }
+
+    private fun bruteForce(contacts: Collection<ContactSummary>, digits: String, limit: Int) =
+        contacts.mapNotNull { contact -> T9Trie.matchType(contact.name, digits)?.let { contact to it } }
+            .sortedWith(
+                compareBy<Pair<ContactSummary, T9Trie.MatchType>> { it.second.ordinal }
+                    .thenByDescending { SuggestionRanking.frecencyRank(it.first.lastCalledAt, it.first.callCount) }
+                    .thenBy { it.first.id }
+            )
+            .take(limit)
+            .map { it.first.id to it.second }
+
+    companion object {
+        private const val DAY = 24L * 60 * 60 * 1000
+        private const val NOW = 1_700_000_000_000L
+        private const val WARMUP = 2_000
+        private const val ITERATIONS = 20_000
+        private const val SCAN_ITERATIONS = 20
+        // Matches few or no names by word start, so results are filled by the mid-word scan
+        private const val SPARSE_KEY = "9999"
+    }
+}
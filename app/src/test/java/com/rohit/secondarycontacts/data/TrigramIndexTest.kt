@@ -0,0 +1,106 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+
+class TrigramIndexTest {
+    @get:Rule
+    val report = BenchmarkReport()
+
+    @Test
+    fun countsSharedTrigramsAndAppliesTheMinimum() {
+        val index = TrigramIndex()
+        index.put(ContactName(1, "John Smith", ""))
+        index.put(ContactName(2, "Jon Smyth", ""))
+        index.put(ContactName(3, "Mary Jones", ""))
+        val grams = Trigrams.of("jhon smith")
+
+        val hits = index.candidates(grams, 3, null, 10).associate { it.contactId to it.shared }
+
+        assertEquals(setOf(1, 2), hits.keys)
+        assertEquals(grams.count { it in Trigrams.of("John Smith") }, hits[1])
+    }
+
+    // Past the limit only the contacts sharing the most trigrams are kept
+    @Test
+    fun limitKeepsTheBestSharedCounts() {
+        val index = TrigramIndex()
+        (1..100).forEach { index.put(ContactName(it, "Smith $it", "")) }
+        index.put(ContactName(101, "Smithers", ""))
+
+        val hits = index.candidates(Trigrams.of("smithers"), 1, null, 5)
+
+        assertEquals(5, hits.size)
+        assertTrue(hits.any { it.contactId == 101 })
+    }
+
+    @Test
+    fun groupIsAppliedBeforeTheLimit() {
+        val index = TrigramIndex()
+        (1..300).forEach { index.put(ContactName(it, "Smith $it", "Work")) }
+        index.put(ContactName(301, "Smyth Family", "Family"))
+
+        val hits = index.candidates(Trigrams.of("smith"), 1, "Family", 200)
+
+        assertEquals(listOf(301), hits.map { it.contactId })
+    }
+
+    @Test
+    fun renamesAndRemovalsDropOldPostings() {
+        val index = TrigramIndex()
+        index.put(ContactName(1, "John Smith", ""))
+        index.put(ContactName(2, "Ann Lee", ""))
+        index.put(ContactName(1, "Priya Patel", "Work"))
+        index.remove(2)
+
+        assertEquals(emptyList<TrigramIndex.Hit>(), index.candidates(Trigrams.of("john"), 1, null, 10))
+        assertEquals(emptyList<TrigramIndex.Hit>(), index.candidates(Trigrams.of("ann lee"), 1, null, 10))
+        assertEquals(listOf(1), index.candidates(Trigrams.of("patel"), 1, "Work", 10).map { it.contactId })
+        assertEquals(1, index.size)
+    }
+
+    // Deleting most of the book rebuilds the postings once instead of scanning them per id
+    @Test
+    fun survivesBulkRemovalAndReinsertion() {
+        val index = TrigramIndex()
+        repeat(3) { round ->
+            (1..1_000).forEach { index.put(ContactName(it, "Contact $round $it", "")) }
+            (1..990).forEach { index.remove(it) }
+        }
+
+        val hits = index.candidates(Trigrams.of("contact 2"), 2, null, 50)
+
+        assertEquals(10, index.size)
+        assertEquals((991..1_000).toSet(), hits.map { it.contactId }.toSet())
+        assertTrue(hits.all { it.name.startsWith("Contact 2 ") })
+    }
+
+    // Candidate counting for 3-5 character typo queries over 100k names, whose trigrams each
+    // sit in thousands of postings
+    @Category(Benchmark::class)
+    @Test
+    fun shortTypoQueriesOn100kNames() {
+        val index = TrigramIndex()
+        val names = SyntheticNames(seed = 3)
+        for (id in 1..BOOK_SIZE) index.put(ContactName(id, names.next(), ""))
+        val queries = TYPO_QUERIES.map { Trigrams.of(it) }
+        repeat(WARMUP) { queries.forEach { index.candidates(it, (it.size / 3).coerceAtLeast(1), null, 200) } }
+
+        val start = System.nanoTime()
+        repeat(ROUNDS) { queries.forEach { index.candidates(it, (it.size / 3).coerceAtLeast(1), null, 200) } }
+        val micros = (System.nanoTime() - start) / 1000.0 / (ROUNDS * queries.size)
+        report.record("%.0f µs per query over %d names".format(micros, BOOK_SIZE))
+
+        assertTrue("$micros µs per query", micros < 1_000)
+    }
+
+    companion object {
+        private const val BOOK_SIZE = 100_000
+        private const val WARMUP = 50
+        private const val ROUNDS = 50
+        val TYPO_QUERIES = listOf("jhon", "smiht", "jmes", "ptel", "wnag", "kmi", "mrya", "lee")
+    }
+}
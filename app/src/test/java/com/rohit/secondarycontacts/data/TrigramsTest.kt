@@ -0,0 +1,25 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TrigramsTest {
+
+    @Test
+    fun wordsArePaddedAndLowercased() {
+        assertEquals(setOf("  j", " jo", "jo "), Trigrams.of("Jo"))
+        assertTrue(Trigrams.of("Ann-Marie").containsAll(listOf("  a", "  m", "rie")))
+        assertTrue(Trigrams.of("Émile").contains(" ém"))
+    }
+
+    @Test
+    fun editDistanceIgnoresUntypedCharacters() {
+        assertEquals(0, Trigrams.substringEditDistance("jon", "Jonathan"))
+        assertEquals(0, Trigrams.substringEditDistance("than", "Jonathan"))
+        assertEquals(1, Trigrams.substringEditDistance("jhn", "John Kim"))
+        assertEquals(2, Trigrams.substringEditDistance("jhon", "John Kim"))
+        assertEquals(1, Trigrams.substringEditDistance("smyth", "Smith"))
+        assertEquals(0, Trigrams.substringEditDistance("", "Anyone"))
+    }
+}
@@ -0,0 +1,194 @@
+package com.rohit.secondarycontacts.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.Reader
+import java.io.StringReader
+import java.util.Base64
+
+class VCardReaderTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @get:Rule
+    val report = BenchmarkReport()
+
+    @Test
+    fun readsFoldedLinesEscapesAndStructuredNameFallback() {
+        val cards = read(
+            "BEGIN:VCARD\r\nVERSION:3.0\r\nN:Lee;Kim;;Dr.;\r\nTEL;TYPE=CELL:555-\r\n 0100\r\n" +
+                "CATEGORIES:Work\\, London,Friends\r\nNOTE:ignored\r\nEND:VCARD\r\n"
+        )
+
+        assertEquals(1, cards.size)
+        assertEquals("Dr. Kim Lee", cards[0].name)
+        assertEquals(listOf(VCardPhone("555-0100", "cell", false)), cards[0].phones)
+        assertEquals("Work, London", cards[0].category)
+    }
+
+    @Test
+    fun quotedPrintableDecodesEscapesSoftBreaksAndRawText() {
+        val escaped = read("BEGIN:VCARD\nFN;CHARSET=UTF-8;ENCODING=QUOTED-PRINTABLE:J=C3=B6rg M=\n=C3=BCller\nTEL:1\nEND:VCARD\n")
+        // Raw non-ASCII next to escapes, as some phones export it
+        val mixed = read("BEGIN:VCARD\nFN;CHARSET=UTF-8;QUOTED-PRINTABLE:Jörg =C3=BC\nTEL:1\nEND:VCARD\n")
+        val latin1 = read("BEGIN:VCARD\nFN;CHARSET=ISO-8859-1;QUOTED-PRINTABLE:Ren=E9 Zoë\nTEL:1\nEND:VCARD\n")
+
+        assertEquals("Jörg Müller", escaped[0].name)
+        assertEquals("Jörg ü", mixed[0].name)
+        assertEquals("René Zoë", latin1[0].name)
+    }
+
+    @Test
+    fun keepsEveryTelAndThePreferredFlag() {
+        val cards = read("BEGIN:VCARD\nFN:Kim\nTEL;HOME:111\nTEL;CELL;PREF:222\nTEL:tel:333\nEND:VCARD\n")
+
+        assertEquals(
+            listOf(VCardPhone("111", "home", false), VCardPhone("222", "cell", true), VCardPhone("333", "", false)),
+            cards[0].phones
+        )
+    }
+
+    // The book keeps one number per contact: no extra "Name (type)" contacts per TEL
+    @Test
+    fun importKeepsOneContactPerCard() {
+        val text = "BEGIN:VCARD\nFN:Kim\nTEL;HOME:111\nTEL;CELL;PREF:222\nEND:VCARD\n" +
+            "BEGIN:VCARD\nFN:Lee\nTEL;HOME:333\nTEL;WORK:444\nEND:VCARD\n"
+        val contacts = ContactIO.readVCard(StringReader(text)).toList()
+
+        assertEquals(listOf("Kim" to "222", "Lee" to "333"), contacts.map { it.name to it.phoneNumber })
+    }
+
+    // Numbers the one-number schema cannot hold are counted; repeats of the kept number are not
+    @Test
+    fun importCountsDroppedNumbers() {
+        val text = "BEGIN:VCARD\nFN:Kim\nTEL;HOME:111\nTEL;CELL;PREF:222\nTEL;WORK:333\nEND:VCARD\n" +
+            "BEGIN:VCARD\nFN:Lee\nTEL;HOME:444\nTEL;CELL:4-4-4\nEND:VCARD\n"
+        var dropped = 0
+        val contacts = ContactIO.readVCard(StringReader(text), onDroppedNumber = { dropped++ }).toList()
+
+        assertEquals(2, contacts.size)
+        assertEquals(2, dropped)
+    }
+
+    @Test
+    fun unterminatedCardIsDroppedWithItsPhoto() {
+        val dir = folder.newFolder()
+        val cards = read("BEGIN:VCARD\nFN:Kim\nPHOTO;ENCODING=b:${base64(PNG)}\nBEGIN:VCARD\nFN:Lee\nTEL:1\nEND:VCARD\n", dir)
+
+        assertEquals(listOf("Lee"), cards.map { it.name })
+        assertTrue(dir.listFiles().orEmpty().isEmpty())
+    }
+
+    @Test
+    fun photoFilesAreNamedAfterTheirFormat() {
+        val dir = folder.newFolder()
+        val cards = read(
+            "BEGIN:VCARD\nFN:A\nPHOTO;ENCODING=BASE64;TYPE=JPEG:${base64(PNG)}\nEND:VCARD\n" +
+                "BEGIN:VCARD\nFN:B\nPHOTO:data:image/jpeg;base64,${base64(JPEG)}\nEND:VCARD\n" +
+                "BEGIN:VCARD\nFN:C\nPHOTO;ENCODING=b:${base64(WEBP)}\nEND:VCARD\n" +
+                "BEGIN:VCARD\nFN:D\nPHOTO;ENCODING=b:${base64("not an image".toByteArray())}\nEND:VCARD\n",
+            dir
+        )
+
+        assertEquals(listOf("png", "jpg", "webp"), cards.take(3).map { it.photoFile!!.extension })
+        assertTrue(PNG.contentEquals(cards[0].photoFile!!.readBytes()))
+        assertNull(cards[3].photoFile)
+        assertEquals(3, dir.listFiles().orEmpty().size)
+    }
+
+    @Test
+    fun photosAreSkippedWithoutADirectory() {
+        val cards = read("BEGIN:VCARD\nFN:A\nPHOTO;ENCODING=b:${base64(PNG)}\nTEL:1\nEND:VCARD\n")
+
+        assertNull(cards[0].photoFile)
+        assertNotNull(cards[0].phones.firstOrNull())
+    }
+
+    // Streams 100k generated cards, every 100th with a base64 photo, and checks the reader
+    // holds nothing per card: heap after 100k cards stays where it was after 10k
+    @Category(Benchmark::class)
+    @Test
+    fun heapStaysFlatOver100kCards() {
+        val dir = folder.newFolder()
+        val reader = VCardReader(GeneratedCards(CARDS), dir)
+        var cards = 0
+        var photos = 0
+        var baseline = 0L
+        val start = System.nanoTime()
+        while (true) {
+            val card = reader.next() ?: break
+            card.photoFile?.let { photos++; it.delete() }
+            cards++
+            if (cards == CARDS / 10) baseline = usedHeap()
+        }
+        val millis = (System.nanoTime() - start) / 1_000_000
+        val growth = usedHeap() - baseline
+        report.record("%d cards, %d photos in %d ms; heap grew %d KB from card %d to %d".format(cards, photos, millis, growth / 1024, CARDS / 10, cards))
+
+        assertEquals(CARDS, cards)
+        assertEquals(CARDS / PHOTO_EVERY, photos)
+        assertTrue("heap grew $growth bytes", growth < MAX_HEAP_GROWTH)
+    }
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) { System.gc() }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    // Produces the cards on demand so the file itself never sits in memory
+    private class GeneratedCards(private val count: Int) : Reader() {
+        private val names = SyntheticNames(seed = 7)
+        private val photo = Base64.getMimeEncoder(74, "\r\n ".toByteArray())
+            .encodeToString(ByteArray(PHOTO_BYTES).also { PNG.copyInto(it) })
+        private var card = 0
+        private var pending = ""
+        private var pos = 0
+
+        override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+            if (pos == pending.length) {
+                if (card == count) return -1
+                pending = next()
+                pos = 0
+            }
+            val n = minOf(length, pending.length - pos)
+            pending.toCharArray(buffer, offset, pos, pos + n)
+            pos += n
+            return n
+        }
+
+        private fun next(): String = buildString {
+            append("BEGIN:VCARD\r\nVERSION:3.0\r\nFN:").append(names.next()).append("\r\n")
+            append("TEL;TYPE=CELL:+1 555 ").append(1_000_000 + card).append("\r\n")
+            if (card % PHOTO_EVERY == 0) append("PHOTO;ENCODING=b;TYPE=PNG:\r\n ").append(photo).append("\r\n")
+            append("END:VCARD\r\n")
+            card++
+        }
+
+        override fun close() {}
+    }
+
+    private fun read(text: String, photoDir: File? = null): List<VCard> {
+        val reader = VCardReader(StringReader(text), photoDir)
+        return generateSequence { reader.next() }.toList()
+    }
+
+    private fun base64(bytes: ByteArray) = Base64.getEncoder().encodeToString(bytes)
+
+    companion object {
+        private val PNG = byteArrayOf(0x89.toByte(), 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 1, 2, 3)
+        private val JPEG = byteArrayOf(0xFF.toByte(), 0xD8.toByte(), 0xFF.toByte(), 0xE0.toByte(), 0, 0x10, 0x4A, 0x46, 0x49, 0x46, 0, 1)
+        private const val CARDS = 100_000
+        private const val PHOTO_EVERY = 100
+        private const val PHOTO_BYTES = 16 * 1024
+        private const val MAX_HEAP_GROWTH = 4L * 1024 * 1024
+        private val WEBP = "RIFF\u0000\u0000\u0000\u0000WEBPVP8 ".toByteArray(Charsets.ISO_8859_1)
+    }
+}